@@ -0,0 +1,33 @@
+package com.nudge.ecs.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of this package with the GC profiler (-prof gc). Reports bytes/op next to the scores.
+ * The container benchmarks (sub-package) are run by the ContainerBenchmarkRunner.
+ * Any JMH command line options are passed on. i.e. a filter and -p to narrow the params:
+ *
+ *     BenchmarkRunner CleanBenchmark -p systems=8 -p churn=0.1
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (args.length == 0 || args[0].startsWith("-"))
+            builder.include(BenchmarkRunner.class.getPackage().getName().replace(".","\\.") + "\\.\\w+Benchmark\\.");
+        builder.addProfiler(GCProfiler.class);
+        new Runner(builder.build()).run();
+    }
+}
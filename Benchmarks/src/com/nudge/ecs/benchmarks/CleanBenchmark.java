@@ -0,0 +1,109 @@
+package com.nudge.ecs.benchmarks;
+
+import com.nudge.ecs.Component;
+import com.nudge.ecs.Entity;
+import com.nudge.ecs.EntityManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EntityManager.clean(). The revalidation of dirty entities against the views of the systems.
+ * Each invocation toggles one random component (C1 - C3) on (churn * entities) entities, then cleans.
+ * Every entity keeps C0, so none are deleted. The toggles are pre-generated. Score is per invocation.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CleanBenchmark {
+
+    private static final int COMPONENTS = 4;
+    private static final int TOGGLES = 1 << 18;
+
+    @Param({"10000", "100000"})
+    public int entities;
+
+    @Param({"1", "4", "8"})
+    public int systems;
+
+    @Param({"0.01", "0.1", "0.5"})
+    public float churn;
+
+    private Fixture fixture;
+    private EntityManager entityManager;
+    private Entity[] created;
+    private Component[][] components;
+    private int[] masks;
+    private int[] toggleEntity;
+    private int[] toggleType;
+    private int cursor;
+    private int perInvocation;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture = new Fixture(entities,COMPONENTS,systems);
+        entityManager = fixture.entityManager();
+        created = new Entity[entities];
+        components = new Component[entities][COMPONENTS];
+        masks = new int[entities];
+        Random rnd = new Random(entities * 31L + systems);
+        for (int i = 0; i < entities; i++) {
+            created[i] = entityManager.create();
+            for (int t = 0; t < COMPONENTS; t++) {
+                components[i][t] = fixture.newComponent(t);
+                if (t == 0 || rnd.nextBoolean()) {
+                    entityManager.addComponent(created[i],components[i][t]);
+                    masks[i] |= 1 << t;
+                }
+            }
+        } fixture.clean();
+        toggleEntity = new int[TOGGLES];
+        toggleType = new int[TOGGLES];
+        for (int i = 0; i < TOGGLES; i++) {
+            toggleEntity[i] = rnd.nextInt(entities);
+            toggleType[i] = 1 + rnd.nextInt(COMPONENTS - 1);
+        } perInvocation = Math.max(1,(int)(entities * churn));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.terminate();
+    }
+
+    @Benchmark
+    public int churnAndClean() {
+        for (int i = 0; i < perInvocation; i++) {
+            final int idx = toggleEntity[cursor];
+            final int t = toggleType[cursor];
+            cursor = (cursor + 1) & (TOGGLES - 1);
+            final int bit = 1 << t;
+            if ((masks[idx] & bit) == 0)
+                entityManager.addComponent(created[idx],components[idx][t]);
+            else entityManager.removeComponent(created[idx],fixture.type(t));
+            masks[idx] ^= bit;
+        } fixture.clean();
+        return cursor;
+    }
+
+    @Benchmark
+    public int toggleAndClean() {
+        for (int i = 0; i < perInvocation; i++) {
+            final Entity e = created[toggleEntity[cursor]];
+            cursor = (cursor + 1) & (TOGGLES - 1);
+            entityManager.disable(e);
+        } fixture.clean();
+        for (int i = 0; i < perInvocation; i++) {
+            final Entity e = created[toggleEntity[(cursor - perInvocation + i) & (TOGGLES - 1)]];
+            entityManager.enable(e);
+        } fixture.clean();
+        return cursor;
+    }
+}
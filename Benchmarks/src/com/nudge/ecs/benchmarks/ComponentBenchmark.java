@@ -0,0 +1,98 @@
+package com.nudge.ecs.benchmarks;
+
+import com.nudge.ecs.Component;
+import com.nudge.ecs.Entity;
+import com.nudge.ecs.EntityManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EntityManager.addComponent() / removeComponent().
+ * Every entity keeps component C0, so it's never deleted. Each invocation adds, then removes,
+ * the other (components) to all entities, cleaning after both. Score is per invocation.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComponentBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int entities;
+
+    @Param({"1", "3", "7"})
+    public int components;
+
+    private Fixture fixture;
+    private EntityManager entityManager;
+    private Entity[] created;
+    private Component[][] toAdd;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture = new Fixture(entities,components + 1,1);
+        entityManager = fixture.entityManager();
+        created = new Entity[entities];
+        toAdd = new Component[entities][components];
+        for (int i = 0; i < entities; i++) {
+            created[i] = entityManager.create();
+            entityManager.addComponent(created[i],fixture.newComponent(0));
+            for (int j = 0; j < components; j++)
+                toAdd[i][j] = fixture.newComponent(j + 1);
+        } fixture.processAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.terminate();
+    }
+
+    @Benchmark
+    public long addRemove() {
+        for (int i = 0; i < entities; i++) {
+            final Entity e = created[i];
+            final Component[] c = toAdd[i];
+            for (int j = 0; j < components; j++)
+                entityManager.addComponent(e,c[j]);
+        } long sum = fixture.processAll();
+        for (int i = 0; i < entities; i++) {
+            final Entity e = created[i];
+            for (int j = 0; j < components; j++)
+                entityManager.removeComponent(e,fixture.type(j + 1));
+        } return sum + fixture.processAll();
+    }
+
+    @Benchmark
+    public long addAllRemove() {
+        for (int i = 0; i < entities; i++)
+            entityManager.addComponents(created[i],toAdd[i]);
+        long sum = fixture.processAll();
+        for (int i = 0; i < entities; i++) {
+            final Entity e = created[i];
+            for (int j = 0; j < components; j++)
+                entityManager.removeComponent(e,fixture.type(j + 1));
+        } return sum + fixture.processAll();
+    }
+
+    @Benchmark
+    public long addRemoveByHandle() {
+        for (int i = 0; i < entities; i++) {
+            final long handle = created[i].handle();
+            final Component[] c = toAdd[i];
+            for (int j = 0; j < components; j++)
+                entityManager.addComponent(handle,c[j]);
+        } long sum = fixture.processAll();
+        for (int i = 0; i < entities; i++) {
+            final long handle = created[i].handle();
+            for (int j = 0; j < components; j++)
+                entityManager.removeComponent(handle,fixture.type(j + 1));
+        } return sum + fixture.processAll();
+    }
+}
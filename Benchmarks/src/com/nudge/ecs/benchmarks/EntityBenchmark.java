@@ -0,0 +1,86 @@
+package com.nudge.ecs.benchmarks;
+
+import com.nudge.ecs.Entity;
+import com.nudge.ecs.EntityManager;
+import com.nudge.ecs.Template;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EntityManager.create() / remove() round trips, one by one and through a template batch.
+ * Each invocation creates and removes all entities, then cleans (the removed entities are freed to the pool).
+ * Score is per invocation. (All entities)
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int entities;
+
+    private Fixture fixture;
+    private EntityManager entityManager;
+    private Template template;
+    private Entity[] created;
+    private int slot0, slot1;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture = new Fixture(entities,2,1);
+        entityManager = fixture.entityManager();
+        template = fixture.ecs().template(Fixture.C0.class, Fixture.C1.class);
+        slot0 = template.slot(Fixture.C0.class);
+        slot1 = template.slot(Fixture.C1.class);
+        created = new Entity[entities];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.terminate();
+    }
+
+    @Benchmark
+    public long createRemove() {
+        for (int i = 0; i < entities; i++) {
+            Entity e = entityManager.create();
+            entityManager.addComponent(e,fixture.newComponent(0));
+            entityManager.addComponent(e,fixture.newComponent(1));
+            created[i] = e;
+        } for (int i = 0; i < entities; i++)
+            entityManager.remove(created[i]);
+        return fixture.processAll();
+    }
+
+    @Benchmark
+    public long createBatchRemove() {
+        final int[] count = {0};
+        entityManager.createBatch(template, entities, (e, i, components) -> {
+            components[slot0] = fixture.newComponent(0);
+            components[slot1] = fixture.newComponent(1);
+            created[count[0]++] = e;
+        }); for (int i = 0; i < entities; i++)
+            entityManager.remove(created[i]);
+        return fixture.processAll();
+    }
+
+    @Benchmark
+    public long createHandleRemove() {
+        long last = 0;
+        for (int i = 0; i < entities; i++) {
+            long handle = entityManager.createHandle();
+            entityManager.addComponent(handle,fixture.newComponent(0));
+            entityManager.remove(handle);
+            last = handle;
+        } fixture.processAll();
+        return last;
+    }
+}
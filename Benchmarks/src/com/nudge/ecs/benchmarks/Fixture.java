@@ -0,0 +1,186 @@
+package com.nudge.ecs.benchmarks;
+
+import com.nudge.ecs.*;
+
+import java.util.List;
+
+/**
+ * Shared world setup for the benchmarks.
+ *
+ * Systems are registered per class, and types are per class.
+ * So the fixture has a fixed set of component classes (C0 - C7) and system classes (S0 - S7).
+ * System i requires components i and i+1 (wrapping), with the component count as the modulo.
+ * With one component type, all systems share the same group.
+ * The Cleaner system requires a component never added. Its process() only cleans.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class Fixture {
+
+    public static final int MAX_COMPONENTS = 8;
+    public static final int MAX_SYSTEMS = 8;
+
+    public static class C0 implements Component { public int value; }
+    public static class C1 implements Component { public int value; }
+    public static class C2 implements Component { public int value; }
+    public static class C3 implements Component { public int value; }
+    public static class C4 implements Component { public int value; }
+    public static class C5 implements Component { public int value; }
+    public static class C6 implements Component { public int value; }
+    public static class C7 implements Component { public int value; }
+
+    public static final List<Class<? extends Component>> COMPONENTS = List.of(
+            C0.class, C1.class, C2.class, C3.class, C4.class, C5.class, C6.class, C7.class
+    );
+
+    /**
+     * Sums the entity ids, and counts the first required component of each entity.
+     * The sum is read by the benchmarks, so the iteration can't be optimized away.
+     */
+    public static abstract class Probe extends ECSystem {
+
+        private final Getter<? extends Component> getter;
+        public long sum;
+
+        public Probe(ECS ecs, Class<? extends Component> first, Class<? extends Component> second) {
+            super(ecs,first,second);
+            getter = ecs.getter(first);
+        }
+
+        @Override
+        protected void processEntity(Entity e) {
+            sum += e.id();
+            if (getter.getUnsafe(e) != null) sum++;
+        }
+    }
+
+    public static class Marker implements Component { }
+
+    public static class Cleaner extends ECSystem {
+        public Cleaner(ECS ecs) { super(ecs,Marker.class); }
+    }
+
+    public static class S0 extends Probe { S0(ECS e, Class<? extends Component> a, Class<? extends Component> b) { super(e,a,b); } }
+    public static class S1 extends Probe { S1(ECS e, Class<? extends Component> a, Class<? extends Component> b) { super(e,a,b); } }
+    public static class S2 extends Probe { S2(ECS e, Class<? extends Component> a, Class<? extends Component> b) { super(e,a,b); } }
+    public static class S3 extends Probe { S3(ECS e, Class<? extends Component> a, Class<? extends Component> b) { super(e,a,b); } }
+    public static class S4 extends Probe { S4(ECS e, Class<? extends Component> a, Class<? extends Component> b) { super(e,a,b); } }
+    public static class S5 extends Probe { S5(ECS e, Class<? extends Component> a, Class<? extends Component> b) { super(e,a,b); } }
+    public static class S6 extends Probe { S6(ECS e, Class<? extends Component> a, Class<? extends Component> b) { super(e,a,b); } }
+    public static class S7 extends Probe { S7(ECS e, Class<? extends Component> a, Class<? extends Component> b) { super(e,a,b); } }
+
+    protected final ECS ecs;
+    protected final EntityManager entityManager;
+    protected final Probe[] systems;
+    protected final Cleaner cleaner;
+    protected final ComponentType[] types;
+    protected final int componentCount;
+
+    public Fixture(int capacity, int componentCount, int systemCount) {
+        this(capacity,componentCount,systemCount,0);
+    }
+
+    /**
+     * @param chunkSize the archetype chunk size. 0 for the default storage
+     */
+    public Fixture(int capacity, int componentCount, int systemCount, int chunkSize) {
+        if (componentCount < 1 || componentCount > MAX_COMPONENTS)
+            throw new IllegalArgumentException("componentCount: " + componentCount);
+        if (systemCount < 1 || systemCount > MAX_SYSTEMS)
+            throw new IllegalArgumentException("systemCount: " + systemCount);
+        this.componentCount = componentCount;
+        this.ecs = new ECS(capacity);
+        if (chunkSize > 0) ecs.useArchetypeStorage(chunkSize);
+        this.types = new ComponentType[componentCount];
+        for (int i = 0; i < componentCount; i++)
+            types[i] = ecs.getType(COMPONENTS.get(i));
+        this.systems = new Probe[systemCount];
+        for (int i = 0; i < systemCount; i++)
+            systems[i] = system(i, COMPONENTS.get(i % componentCount), COMPONENTS.get((i + 1) % componentCount));
+        this.cleaner = new Cleaner(ecs);
+        ecs.initialize();
+        this.entityManager = ecs.entityManager();
+    }
+
+    private Probe system(int i, Class<? extends Component> a, Class<? extends Component> b) {
+        switch (i) {
+            case 0: return new S0(ecs,a,b);
+            case 1: return new S1(ecs,a,b);
+            case 2: return new S2(ecs,a,b);
+            case 3: return new S3(ecs,a,b);
+            case 4: return new S4(ecs,a,b);
+            case 5: return new S5(ecs,a,b);
+            case 6: return new S6(ecs,a,b);
+            default: return new S7(ecs,a,b);
+        }
+    }
+
+    public Component newComponent(int type) {
+        switch (type) {
+            case 0: return new C0();
+            case 1: return new C1();
+            case 2: return new C2();
+            case 3: return new C3();
+            case 4: return new C4();
+            case 5: return new C5();
+            case 6: return new C6();
+            default: return new C7();
+        }
+    }
+
+    /**
+     * Creates an entity with every component type of the fixture.
+     */
+    public Entity createFull() {
+        Entity e = entityManager.create();
+        for (int i = 0; i < componentCount; i++)
+            entityManager.addComponent(e,newComponent(i));
+        return e;
+    }
+
+    /**
+     * Revalidates the dirty entities. (EntityManager.clean() runs before every system process)
+     */
+    public void clean() {
+        cleaner.process();
+    }
+
+    /**
+     * Processes the systems in order. The first one cleans.
+     * @return the sum of the system probes
+     */
+    public long processAll() {
+        long sum = 0;
+        for (Probe system : systems) {
+            system.process();
+            sum += system.sum;
+        } return sum;
+    }
+
+    public ECS ecs() {
+        return ecs;
+    }
+
+    public EntityManager entityManager() {
+        return entityManager;
+    }
+
+    public Probe system(int i) {
+        return systems[i];
+    }
+
+    public ComponentType type(int i) {
+        return types[i];
+    }
+
+    public int componentCount() {
+        return componentCount;
+    }
+
+    public void terminate() {
+        ecs.terminate();
+    }
+}
@@ -0,0 +1,99 @@
+package com.nudge.ecs.benchmarks;
+
+import com.nudge.ecs.Entity;
+import com.nudge.ecs.Getter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getter.get() vs getUnsafe(), by entity and by handle. Reads C0 of every entity,
+ * in creation order or shuffled. Optionally with C0 in SparseSet storage. Score is per invocation.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetterBenchmark {
+
+    @Param({"1000", "100000"})
+    public int entities;
+
+    @Param({"false", "true"})
+    public boolean shuffled;
+
+    @Param({"false", "true"})
+    public boolean sparse;
+
+    private Fixture fixture;
+    private Getter<Fixture.C0> getter;
+    private Entity[] order;
+    private long[] handles;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture = new Fixture(entities,2,1);
+        if (sparse) fixture.ecs().useSparseStorage(Fixture.C0.class);
+        getter = fixture.ecs().getter(Fixture.C0.class);
+        order = new Entity[entities];
+        for (int i = 0; i < entities; i++) {
+            order[i] = fixture.createFull();
+            getter.getUnsafe(order[i]).value = i;
+        } fixture.clean();
+        if (shuffled) {
+            Random rnd = new Random(entities);
+            for (int i = entities - 1; i > 0; i--) {
+                int j = rnd.nextInt(i + 1);
+                Entity tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        } handles = new long[entities];
+        for (int i = 0; i < entities; i++)
+            handles[i] = order[i].handle();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.terminate();
+    }
+
+    @Benchmark
+    public long get() {
+        long sum = 0;
+        for (Entity e : order)
+            sum += getter.get(e).value;
+        return sum;
+    }
+
+    @Benchmark
+    public long getUnsafe() {
+        long sum = 0;
+        for (Entity e : order)
+            sum += getter.getUnsafe(e).value;
+        return sum;
+    }
+
+    @Benchmark
+    public long getHandle() {
+        long sum = 0;
+        for (long handle : handles)
+            sum += getter.get(handle).value;
+        return sum;
+    }
+
+    @Benchmark
+    public long getUnsafeHandle() {
+        long sum = 0;
+        for (long handle : handles)
+            sum += getter.getUnsafe(handle).value;
+        return sum;
+    }
+}
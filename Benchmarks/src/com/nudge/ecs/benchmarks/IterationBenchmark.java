@@ -0,0 +1,66 @@
+package com.nudge.ecs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ECSystem.process() iteration, with nothing to clean. Each system reads one component per entity.
+ * The entities have every component of the fixture, so they're members of every system.
+ * Score is per invocation. (All systems) Without archetype storage, processChunks() is process().
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IterationBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int entities;
+
+    @Param({"1", "4", "8"})
+    public int systems;
+
+    @Param({"2", "8"})
+    public int components;
+
+    @Param({"false", "true"})
+    public boolean archetypes;
+
+    private Fixture fixture;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture = new Fixture(entities,components,systems,archetypes ? 256 : 0);
+        for (int i = 0; i < entities; i++)
+            fixture.createFull();
+        fixture.clean();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.terminate();
+    }
+
+    @Benchmark
+    public long process() {
+        return fixture.processAll();
+    }
+
+    @Benchmark
+    public long processChunks() {
+        if (!archetypes) return process();
+        long sum = 0;
+        for (int i = 0; i < systems; i++) {
+            Fixture.Probe system = fixture.system(i);
+            system.processChunks();
+            sum += system.sum;
+        } return sum;
+    }
+}
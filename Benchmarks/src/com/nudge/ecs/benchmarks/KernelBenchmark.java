@@ -0,0 +1,108 @@
+package com.nudge.ecs.benchmarks;
+
+import com.nudge.ecs.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * pos += vel * dt over a primitive column component. Per entity through a ColumnAccessor (process()),
+ * with the row kernel over the ids of the system (gathered each invocation), and with the range kernel over whole columns.
+ * Score is per invocation. (All entities, both axes)
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+    public static class Motion extends Columns {
+        public final int X = floatColumn("x");
+        public final int Y = floatColumn("y");
+        public final int VX = floatColumn("vx");
+        public final int VY = floatColumn("vy");
+    }
+
+    public static class Integrator extends ECSystem {
+
+        private final Motion motion;
+        private final ColumnAccessor<Motion> accessor;
+        float dt;
+
+        public Integrator(ECS ecs) {
+            super(ecs,Motion.class);
+            motion = ecs.columns(Motion.class);
+            accessor = ecs.accessor(Motion.class);
+        }
+
+        @Override
+        protected void processEntity(Entity e) {
+            accessor.at(e);
+            accessor.addFloat(motion.X, accessor.getFloat(motion.VX) * dt);
+            accessor.addFloat(motion.Y, accessor.getFloat(motion.VY) * dt);
+        }
+
+        EntityArray entities() {
+            return getEntities();
+        }
+    }
+
+    private static final float DT = 1 / 60f;
+
+    @Param({"1000", "10000", "100000"})
+    public int entities;
+
+    private ECS ecs;
+    private Motion motion;
+    private Integrator integrator;
+    private int[] rows;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ecs = new ECS(entities);
+        motion = ecs.registerColumns(new Motion());
+        integrator = new Integrator(ecs);
+        integrator.dt = DT;
+        ecs.initialize();
+        final EntityManager entityManager = ecs.entityManager();
+        for (int i = 0; i < entities; i++) {
+            Entity e = entityManager.create();
+            entityManager.addComponent(e,motion);
+            motion.setFloat(motion.VX, e.id(), i % 7);
+            motion.setFloat(motion.VY, e.id(), i % 11);
+        } integrator.process();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ecs.terminate();
+    }
+
+    @Benchmark
+    public float perEntity() {
+        integrator.process();
+        return motion.getFloat(motion.X,0);
+    }
+
+    @Benchmark
+    public float rowKernel() {
+        final EntityArray array = integrator.entities();
+        rows = ColumnKernels.rows(array,rows);
+        motion.addScaled(motion.X, motion.VX, DT, rows, array.count());
+        motion.addScaled(motion.Y, motion.VY, DT, rows, array.count());
+        return motion.getFloat(motion.X,0);
+    }
+
+    @Benchmark
+    public float wholeColumns() {
+        motion.addScaled(motion.X, motion.VX, DT);
+        motion.addScaled(motion.Y, motion.VY, DT);
+        return motion.getFloat(motion.X,0);
+    }
+}
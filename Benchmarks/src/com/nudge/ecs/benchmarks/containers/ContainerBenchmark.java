@@ -0,0 +1,93 @@
+package com.nudge.ecs.benchmarks.containers;
+
+import com.nudge.ecs.util.containers.Container;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Container push / pop and indexed set / remove vs ArrayList / ArrayDeque.
+ * Every invocation fills from empty, so the grow formula and the shrink back to the target capacity are measured.
+ * Score is per invocation. (size elements)
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContainerBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private Container<Item> container;
+    private ArrayList<Item> list;
+    private ArrayDeque<Item> deque;
+    private Item[] items;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        items = new Item[size];
+        for (int i = 0; i < size; i++)
+            items[i] = new Item(i);
+        container = new Container<>(16);
+        list = new ArrayList<>(16);
+        deque = new ArrayDeque<>(16);
+    }
+
+    @Benchmark
+    public int pushPopContainer() {
+        for (Item item : items) container.push(item);
+        int n = 0;
+        while (container.pop() != null) n++;
+        container.fit(false);
+        return n;
+    }
+
+    @Benchmark
+    public int pushPopArrayList() {
+        for (Item item : items) list.add(item);
+        int n = 0;
+        while (!list.isEmpty()) {
+            list.remove(list.size() - 1);
+            n++;
+        } list.trimToSize();
+        return n;
+    }
+
+    @Benchmark
+    public int pushPopArrayDeque() {
+        for (Item item : items) deque.push(item);
+        int n = 0;
+        while (deque.pollFirst() != null) n++;
+        return n;
+    }
+
+    @Benchmark
+    public int setRemoveContainer() {
+        for (int i = 0; i < size; i++) container.set(items[i],i);
+        int n = 0;
+        for (int i = size - 1; i >= 0; i--)
+            if (container.remove(i) != null) n++;
+        container.fit(false);
+        return n;
+    }
+
+    @Benchmark
+    public int setRemoveArrayList() {
+        for (int i = 0; i < size; i++) list.add(items[i]);
+        int n = 0;
+        for (int i = size - 1; i >= 0; i--)
+            if (list.set(i,null) != null) n++;
+        list.clear();
+        list.trimToSize();
+        return n;
+    }
+}
@@ -0,0 +1,39 @@
+package com.nudge.ecs.benchmarks.containers;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Runs the container benchmarks with the GC profiler, writing the results as JSON.
+ * To diff between releases. The default file is bench_containers.json (working directory),
+ * or set with -rff. Other JMH command line options are passed on.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class ContainerBenchmarkRunner {
+
+    public static final String DEFAULT_RESULT_FILE = "bench_containers.json";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (args.length == 0 || args[0].startsWith("-"))
+            builder.include(ContainerBenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+        if (!Arrays.asList(args).contains("-rff"))
+            builder.result(DEFAULT_RESULT_FILE);
+        builder.resultFormat(ResultFormatType.JSON);
+        builder.addProfiler(GCProfiler.class);
+        new Runner(builder.build()).run();
+    }
+}
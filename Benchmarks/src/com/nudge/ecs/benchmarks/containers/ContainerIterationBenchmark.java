@@ -0,0 +1,84 @@
+package com.nudge.ecs.benchmarks.containers;
+
+import com.nudge.ecs.util.containers.Container;
+import com.nudge.ecs.util.containers.Iterator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Container iteration vs ArrayList, with (holes) of the slots removed at random.
+ * With no holes, Container.iterate() takes the stacked path. The ArrayList keeps the same holes as null elements.
+ * Score is per invocation. (size slots)
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContainerIterationBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    @Param({"0", "0.1", "0.5", "0.9"})
+    public float holes;
+
+    private Container<Item> container;
+    private ArrayList<Item> list;
+    private long sum;
+
+    private final Iterator<Item> itr = item -> sum += item.value;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        container = new Container<>(size);
+        list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Item item = new Item(i);
+            container.set(item,i);
+            list.add(item);
+        } Random rnd = new Random(size);
+        int toRemove = (int)(size * holes);
+        while (toRemove > 0) {
+            int i = rnd.nextInt(size);
+            if (list.get(i) != null) {
+                container.remove(i);
+                list.set(i,null);
+                toRemove--;
+            }
+        }
+    }
+
+    @Benchmark
+    public long iterateContainer() {
+        sum = 0;
+        container.iterate(itr);
+        return sum;
+    }
+
+    @Benchmark
+    public long indexLoopContainer() {
+        long sum = 0;
+        final int used = container.usedSpace();
+        for (int i = 0; i < used; i++) {
+            Item item = container.get(i);
+            if (item != null) sum += item.value;
+        } return sum;
+    }
+
+    @Benchmark
+    public long iterateArrayList() {
+        long sum = 0;
+        for (Item item : list)
+            if (item != null) sum += item.value;
+        return sum;
+    }
+}
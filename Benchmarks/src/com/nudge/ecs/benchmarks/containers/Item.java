@@ -0,0 +1,20 @@
+package com.nudge.ecs.benchmarks.containers;
+
+import com.nudge.ecs.util.containers.KVSingle;
+
+/**
+ * The element of the container benchmarks. A KVSingle, so it can be added to a KVArray.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class Item extends KVSingle {
+
+    public final int value;
+
+    public Item(int value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,107 @@
+package com.nudge.ecs.benchmarks.containers;
+
+import com.nudge.ecs.util.containers.Iterator;
+import com.nudge.ecs.util.containers.KVArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * KVArray vs ArrayList. Adding all items, then removing them in random order (O(1) by key vs O(n) search).
+ * And iteration of the full arrays. Score is per invocation. (size items)
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KVArrayBenchmark {
+
+    @Param({"16", "1024", "16384"})
+    public int size;
+
+    private KVArray<Item> array;
+    private ArrayList<Item> list;
+    private KVArray<Item> full;
+    private ArrayList<Item> fullList;
+    private Item[] items;
+    private Item[] shuffled;
+    private long sum;
+
+    private final Iterator<Item> itr = item -> sum += item.value;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        items = new Item[size];
+        shuffled = new Item[size];
+        for (int i = 0; i < size; i++)
+            shuffled[i] = items[i] = new Item(i);
+        Random rnd = new Random(size);
+        for (int i = size - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            Item tmp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = tmp;
+        } array = new KVArray<>(16);
+        list = new ArrayList<>(16);
+        // separate items for iteration. An item holds a single key
+        full = new KVArray<>(size);
+        fullList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Item item = new Item(i);
+            full.add(item);
+            fullList.add(item);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        array.free();
+        full.free();
+    }
+
+    @Benchmark
+    public int addRemoveKVArray() {
+        for (Item item : items) array.add(item);
+        for (Item item : shuffled) array.remove(item);
+        return array.count();
+    }
+
+    @Benchmark
+    public int addRemoveArrayList() {
+        for (Item item : items) list.add(item);
+        for (Item item : shuffled) list.remove(item);
+        return list.size();
+    }
+
+    @Benchmark
+    public long iterateKVArray() {
+        sum = 0;
+        full.iterate(itr);
+        return sum;
+    }
+
+    @Benchmark
+    public long indexLoopKVArray() {
+        long sum = 0;
+        final int count = full.count();
+        for (int i = 0; i < count; i++)
+            sum += full.get(i).value;
+        return sum;
+    }
+
+    @Benchmark
+    public long iterateArrayList() {
+        long sum = 0;
+        for (Item item : fullList)
+            sum += item.value;
+        return sum;
+    }
+}
@@ -0,0 +1,75 @@
+package com.nudge.ecs.benchmarks.containers;
+
+import com.nudge.ecs.util.containers.Pool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool obtain / free vs an ArrayDeque free-list and plain allocation.
+ * Each invocation obtains (size) objects, then frees them all. Run with -prof gc to compare bytes/op.
+ * Score is per invocation.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoolBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private Pool<Item> pool;
+    private ArrayDeque<Item> free;
+    private Item[] obtained;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pool = new Pool<Item>(size) {
+            @Override
+            protected Item newObject() {
+                return new Item(0);
+            }
+        };
+        pool.fill(size);
+        free = new ArrayDeque<>(size);
+        for (int i = 0; i < size; i++)
+            free.push(new Item(0));
+        obtained = new Item[size];
+    }
+
+    @Benchmark
+    public int obtainFreePool() {
+        for (int i = 0; i < size; i++)
+            obtained[i] = pool.obtain();
+        for (int i = 0; i < size; i++)
+            pool.free(obtained[i]);
+        return pool.size();
+    }
+
+    @Benchmark
+    public int obtainFreeArrayDeque() {
+        for (int i = 0; i < size; i++) {
+            Item item = free.poll();
+            obtained[i] = item == null ? new Item(0) : item;
+        } for (int i = 0; i < size; i++)
+            free.push(obtained[i]);
+        return free.size();
+    }
+
+    @Benchmark
+    public int allocate() {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            obtained[i] = new Item(i);
+            n += obtained[i].value;
+        } return n;
+    }
+}
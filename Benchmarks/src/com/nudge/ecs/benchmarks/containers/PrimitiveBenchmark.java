@@ -0,0 +1,107 @@
+package com.nudge.ecs.benchmarks.containers;
+
+import com.nudge.ecs.util.IntQueue;
+import com.nudge.ecs.util.IntStack;
+import com.nudge.ecs.util.ShortStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IntStack, ShortStack and IntQueue vs boxed ArrayDeque and a plain int[] (the lower bound).
+ * Each invocation fills from empty and drains. The stacks / queue shrink back to 16 when drained
+ * after reaching 128, so sizes above that grow from scratch every invocation. Score is per invocation.
+ * ShortStack holds at most Short.MAX_VALUE items, so the short benchmarks are capped at that.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private IntStack intStack;
+    private ShortStack shortStack;
+    private IntQueue intQueue;
+    private ArrayDeque<Integer> deque;
+    private ArrayDeque<Short> shortDeque;
+    private int[] array;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        intStack = new IntStack();
+        shortStack = new ShortStack();
+        intQueue = new IntQueue();
+        deque = new ArrayDeque<>(16);
+        shortDeque = new ArrayDeque<>(16);
+        array = new int[size];
+    }
+
+    @Benchmark
+    public long intStack() {
+        for (int i = 0; i < size; i++) intStack.push(i);
+        long n = 0;
+        while (!intStack.isEmpty()) n += intStack.pop();
+        return n;
+    }
+
+    @Benchmark
+    public long shortStack() {
+        final int count = Math.min(size,Short.MAX_VALUE);
+        for (int i = 0; i < count; i++) shortStack.push((short) i);
+        long n = 0;
+        while (!shortStack.isEmpty()) n += shortStack.pop();
+        return n;
+    }
+
+    @Benchmark
+    public long intQueue() {
+        for (int i = 0; i < size; i++) intQueue.enqueue(i);
+        long n = 0;
+        while (!intQueue.isEmpty()) n += intQueue.dequeue();
+        return n;
+    }
+
+    @Benchmark
+    public long stackArrayDeque() {
+        for (int i = 0; i < size; i++) deque.push(i);
+        long n = 0;
+        while (!deque.isEmpty()) n += deque.pop();
+        return n;
+    }
+
+    @Benchmark
+    public long shortStackArrayDeque() {
+        final int count = Math.min(size,Short.MAX_VALUE);
+        for (int i = 0; i < count; i++) shortDeque.push((short) i);
+        long n = 0;
+        while (!shortDeque.isEmpty()) n += shortDeque.pop();
+        return n;
+    }
+
+    @Benchmark
+    public long queueArrayDeque() {
+        for (int i = 0; i < size; i++) deque.offer(i);
+        long n = 0;
+        while (!deque.isEmpty()) n += deque.poll();
+        return n;
+    }
+
+    @Benchmark
+    public long stackArray() {
+        int top = 0;
+        for (int i = 0; i < size; i++) array[top++] = i;
+        long n = 0;
+        while (top > 0) n += array[--top];
+        return n;
+    }
+}
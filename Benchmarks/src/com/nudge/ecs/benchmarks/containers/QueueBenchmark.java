@@ -0,0 +1,84 @@
+package com.nudge.ecs.benchmarks.containers;
+
+import com.nudge.ecs.util.containers.Queue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue vs ArrayDeque. Filling from empty then draining (grow, then shrink back to the target capacity).
+ * And a steady state, where a window of (size) items is kept while items pass through. Score is per invocation.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private Queue<Item> queue;
+    private ArrayDeque<Item> deque;
+    private Queue<Item> window;
+    private ArrayDeque<Item> dequeWindow;
+    private Item[] items;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        items = new Item[size];
+        for (int i = 0; i < size; i++)
+            items[i] = new Item(i);
+        queue = new Queue<>(16);
+        deque = new ArrayDeque<>(16);
+        window = new Queue<>(size);
+        dequeWindow = new ArrayDeque<>(size);
+        for (Item item : items) {
+            window.enqueue(item);
+            dequeWindow.offer(item);
+        }
+    }
+
+    @Benchmark
+    public int fillDrainQueue() {
+        for (Item item : items) queue.enqueue(item);
+        int n = 0;
+        while (queue.notEmpty()) n += queue.dequeue().value;
+        return n;
+    }
+
+    @Benchmark
+    public int fillDrainArrayDeque() {
+        for (Item item : items) deque.offer(item);
+        int n = 0;
+        while (!deque.isEmpty()) n += deque.poll().value;
+        return n;
+    }
+
+    @Benchmark
+    public int passThroughQueue() {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            Item item = window.dequeue();
+            n += item.value;
+            window.enqueue(item);
+        } return n;
+    }
+
+    @Benchmark
+    public int passThroughArrayDeque() {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            Item item = dequeWindow.poll();
+            n += item.value;
+            dequeWindow.offer(item);
+        } return n;
+    }
+}
@@ -0,0 +1,175 @@
+package com.nudge.ecs;
+
+import java.util.Arrays;
+
+/**
+ *
+ * An Archetype is the unique set of component types some entities have in common.
+ * (The value of Entity.components())
+ *
+ * Only used with archetype storage (ECS.useArchetypeStorage()). The entities of an archetype
+ * are kept in fixed-size chunks, with one contiguous array (column) per component type.
+ *
+ * Archetypes are created on demand by the ArchetypeStorage and are never deleted.
+ * Chunks that become empty are kept for reuse until fit() is called (CapacityControl).
+ *
+ * Archetypes remember the archetype you get by adding or removing a single type (edges),
+ * so moving an entity between two archetypes only requires a map lookup the first time.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class Archetype {
+
+    private final ComponentMask mask;
+    private final int chunkSize;
+    private final short[] columnOf;
+    private final ComponentType[] types;
+    private Archetype[] with;
+    private Archetype[] without;
+
+    private Chunk[] chunks;
+    private int chunkCount;
+    private int allocated;
+    private int count;
+
+    protected Archetype(ComponentMask mask, ComponentType[] types, int typeCount, int chunkSize) {
+        this.mask = mask;
+        this.types = types;
+        this.chunkSize = chunkSize;
+        this.columnOf = new short[typeCount];
+        this.with = new Archetype[typeCount];
+        this.without = new Archetype[typeCount];
+        Arrays.fill(columnOf,(short) -1);
+        for (short i = 0; i < types.length; i++)
+            columnOf[types[i].id()] = i;
+        this.chunks = new Chunk[1];
+        this.chunks[0] = new Chunk(this,chunkSize);
+        this.chunkCount = 1;
+        this.allocated = 1;
+    }
+
+    public ComponentMask mask() {
+        return mask;
+    }
+
+    /**
+     * @return the number of entities in the archetype
+     */
+    public int count() {
+        return count;
+    }
+
+    public int chunkCount() {
+        return chunkCount;
+    }
+
+    public Chunk chunk(int index) {
+        return chunks[index];
+    }
+
+    public int typeCount() {
+        return types.length;
+    }
+
+    public ComponentType type(int column) {
+        return types[column];
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @param typeID the component type id
+     * @return the column index of the type, or -1 if the type is not part of the archetype
+     */
+    protected int column(int typeID) {
+        return typeID < columnOf.length ? columnOf[typeID] : -1;
+    }
+
+    /**
+     * Appends the entity to the last chunk, allocating a new chunk if full.
+     * Components are not written here.
+     *
+     * @param e the entity
+     * @return the chunk the entity was placed in. The entity is in its last row.
+     */
+    protected Chunk append(Entity e) {
+        Chunk chunk = chunks[chunkCount - 1];
+        if (chunk.isFull()) {
+            if (chunkCount == allocated) {
+                if (allocated == chunks.length) {
+                    Chunk[] tmp = chunks;
+                    chunks = new Chunk[allocated << 1];
+                    System.arraycopy(tmp,0,chunks,0,allocated);
+                }
+                chunks[allocated++] = new Chunk(this,chunkSize);
+            }
+            chunk = chunks[chunkCount++];
+        }
+        chunk.entities[chunk.count++] = e;
+        count++;
+        return chunk;
+    }
+
+    /**
+     * Returns the last chunk holding any entities. (The chunk to swap-remove from)
+     * @return the last chunk, or the first (empty) chunk if the archetype is empty
+     */
+    protected Chunk last() {
+        return chunks[chunkCount - 1];
+    }
+
+    /**
+     * Called after the last row of the last chunk has been vacated.
+     * If the last chunk became empty, it is kept as a spare (the first chunk is always in use).
+     */
+    protected void onLastRowVacated() {
+        count--;
+        if (chunkCount > 1 && chunks[chunkCount - 1].isEmpty())
+            chunkCount--;
+    }
+
+    /**
+     * Releases spare chunks and shrinks the chunk array down to the number of chunks in use.
+     * @return whether anything was released
+     */
+    protected boolean fit() {
+        if (chunks.length == chunkCount) return false;
+        Chunk[] tmp = chunks;
+        chunks = new Chunk[chunkCount];
+        System.arraycopy(tmp,0,chunks,0,chunkCount);
+        allocated = chunkCount;
+        return true;
+    }
+
+    /**
+     * @return number of entity rows allocated by the archetype (spare chunks included)
+     */
+    protected int capacity() {
+        return allocated * chunkSize;
+    }
+
+    protected Archetype with(int typeID) {
+        return typeID < with.length ? with[typeID] : null;
+    }
+
+    protected Archetype without(int typeID) {
+        return typeID < without.length ? without[typeID] : null;
+    }
+
+    // Types can be registered after an archetype is created (before ECS initialization)
+
+    protected void setWith(int typeID, Archetype archetype) {
+        if (typeID >= with.length) with = Arrays.copyOf(with, typeID + 1);
+        with[typeID] = archetype;
+    }
+
+    protected void setWithout(int typeID, Archetype archetype) {
+        if (typeID >= without.length) without = Arrays.copyOf(without, typeID + 1);
+        without[typeID] = archetype;
+    }
+}
@@ -0,0 +1,347 @@
+package com.nudge.ecs;
+
+
+import com.nudge.ecs.util.containers.Container;
+import com.nudge.ecs.util.containers.Iterator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Optional component storage. Enable with ECS.useArchetypeStorage(chunkSize) before adding any components.
+ *
+ * Instead of keeping one container per component type indexed by entity id, entities with
+ * the same set of components (same Archetype) are kept together in fixed-size chunks.
+ * Every chunk holds one array (column) per component type of its archetype.
+ * A system processing chunks then walks arrays that are next to each other, instead of
+ * doing a separate random read into each types' container for every entity.
+ *
+ * Adding or removing a component type moves the entity (and its remaining components)
+ * to the chunks of another archetype. Replacing a component does not.
+ * The location (chunk, row) of an entity is tracked by entity id, so Getter lookups still work.
+ *
+ * Structural changes (anything that moves entities) are not allowed while chunks are being
+ * iterated by a system. See ECSystem.processChunks().
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class ArchetypeStorage {
+
+    private final ComponentManager manager;
+    private final Map<ComponentMask, Archetype> archetypeMap;
+    private final Container<Archetype> archetypes;
+    private final ComponentMask scratch;
+    private final int chunkSize;
+    private Archetype[] roots;
+
+    private Chunk[] chunkOf;
+    private int[] rowOf;
+    private int iterating;
+
+    protected ArchetypeStorage(ComponentManager manager, int chunkSize, int initialCap) {
+        if (chunkSize < 1) throw new IllegalArgumentException("chunk size < 1");
+        this.manager = manager;
+        this.chunkSize = chunkSize;
+        this.archetypeMap = new HashMap<>();
+        this.archetypes = new Container<>();
+        this.roots = new Archetype[0];
+        this.scratch = new ComponentMask();
+        this.chunkOf = new Chunk[Math.max(initialCap,1)];
+        this.rowOf = new int[chunkOf.length];
+    }
+
+    /**
+     * Unsafe. Does not check for index out of bounds.
+     * The entity must be stored (have at least one component).
+     *
+     * @param entityID the entity
+     * @param typeID the type
+     * @return the component, or null if the entity does not have the type
+     */
+    protected Component get(int entityID, int typeID) {
+        final Chunk chunk = chunkOf[entityID];
+        final int column = chunk.archetype().column(typeID);
+        return column < 0 ? null : chunk.columns[column][rowOf[entityID]];
+    }
+
+    protected Component getChecked(int entityID, int typeID) {
+        if (entityID < chunkOf.length) {
+            final Chunk chunk = chunkOf[entityID];
+            if (chunk != null) {
+                final int column = chunk.archetype().column(typeID);
+                if (column >= 0) return chunk.columns[column][rowOf[entityID]];
+            }
+        } return null;
+    }
+
+    /**
+     * Replaces the component in place. The entity must already have the type.
+     *
+     * @return the replaced component
+     */
+    protected Component set(int entityID, int typeID, Component c) {
+        final Chunk chunk = chunkOf[entityID];
+        final Component[] column = chunk.columns[chunk.archetype().column(typeID)];
+        final int row = rowOf[entityID];
+        final Component replaced = column[row];
+        column[row] = c;
+        return replaced;
+    }
+
+    /**
+     * Moves the entity to the archetype of one more type, and writes the new component.
+     * The entity's component flags are expected to be updated by the caller (before or after).
+     *
+     * @param e the entity
+     * @param type the type added
+     * @param c the component
+     */
+    protected void add(Entity e, ComponentType type, Component c) {
+        final int id = e.id();
+        ensureCapacity(id);
+        final Chunk src = chunkOf[id];
+        final int typeID = type.id();
+        final Archetype dst;
+        if (src == null) {
+            if (typeID >= roots.length)
+                roots = Arrays.copyOf(roots, typeID + 1);
+            Archetype root = roots[typeID];
+            if (root == null) {
+                scratch.clear();
+                scratch.set(typeID);
+                root = getArchetype(scratch);
+                roots[typeID] = root;
+            } dst = root;
+        } else {
+            final Archetype archetype = src.archetype();
+            Archetype next = archetype.with(typeID);
+            if (next == null) {
+                scratch.set(archetype.mask());
+                scratch.set(typeID);
+                next = getArchetype(scratch);
+                archetype.setWith(typeID,next);
+                next.setWithout(typeID,archetype);
+            } dst = next;
+        }
+        move(e,src,dst);
+        final Chunk chunk = chunkOf[id];
+        chunk.columns[dst.column(typeID)][rowOf[id]] = c;
+    }
+
+    /**
+     * Places an entity without components straight into the archetype. (Template batches)
+     *
+     * @param e the entity
+     * @param dst the archetype
+     * @param components the components, in the type order of the archetype
+     */
+    protected void insert(Entity e, Archetype dst, Component[] components) {
+        if (iterating > 0)
+            throw new IllegalStateException("Structural change while iterating chunks");
+        final int id = e.id();
+        ensureCapacity(id);
+        final Chunk chunk = dst.append(e);
+        final int row = chunk.count - 1;
+        for (int i = 0; i < components.length; i++)
+            chunk.columns[i][row] = components[i];
+        chunkOf[id] = chunk;
+        rowOf[id] = row;
+    }
+
+    /**
+     * Removes the component of the type and moves the entity to the archetype of one less type.
+     *
+     * @param e the entity (must have the type)
+     * @param type the type removed
+     * @return the removed component
+     */
+    protected Component remove(Entity e, ComponentType type) {
+        final int id = e.id();
+        final Chunk src = chunkOf[id];
+        final Archetype archetype = src.archetype();
+        final int typeID = type.id();
+        final Component removed = src.columns[archetype.column(typeID)][rowOf[id]];
+        Archetype dst = null;
+        if (archetype.typeCount() > 1) {
+            dst = archetype.without(typeID);
+            if (dst == null) {
+                scratch.set(archetype.mask());
+                scratch.clear(typeID);
+                dst = getArchetype(scratch);
+                archetype.setWithout(typeID,dst);
+                dst.setWith(typeID,archetype);
+            }
+        }
+        move(e,src,dst);
+        return removed;
+    }
+
+    /**
+     * Removes the entity from storage, handing each of its components to the iterator.
+     *
+     * @param e the entity
+     * @param itr receives the (type, component) of every removed component
+     */
+    protected void removeAll(Entity e, RemovedComponent itr) {
+        final int id = e.id();
+        final Chunk src = chunkOf[id];
+        if (src == null) return;
+        final Archetype archetype = src.archetype();
+        final int row = rowOf[id];
+        for (int i = 0; i < archetype.typeCount(); i++)
+            itr.removed(archetype.type(i),src.columns[i][row]);
+        move(e,src,null);
+    }
+
+    /**
+     * Copies the shared components from the src row into a new row of dst,
+     * then fills the hole in src with the last entity of the src archetype.
+     */
+    private void move(Entity e, Chunk src, Archetype dst) {
+        if (iterating > 0)
+            throw new IllegalStateException("Structural change while iterating chunks");
+        final int id = e.id();
+        final int srcRow = rowOf[id];
+        if (dst != null) {
+            final Chunk chunk = dst.append(e);
+            final int row = chunk.count - 1;
+            if (src != null) {
+                final Archetype archetype = src.archetype();
+                for (int i = 0; i < archetype.typeCount(); i++) {
+                    final int column = dst.column(archetype.type(i).id());
+                    if (column >= 0) chunk.columns[column][row] = src.columns[i][srcRow];
+                }
+            }
+            chunkOf[id] = chunk;
+            rowOf[id] = row;
+        } else chunkOf[id] = null;
+        if (src != null) vacate(src,srcRow);
+    }
+
+    private void vacate(Chunk chunk, int row) {
+        final Archetype archetype = chunk.archetype();
+        final Chunk last = archetype.last();
+        final int lastRow = last.count - 1;
+        final int columns = archetype.typeCount();
+        if (chunk != last || row != lastRow) {
+            final Entity moved = last.entities[lastRow];
+            chunk.entities[row] = moved;
+            for (int i = 0; i < columns; i++)
+                chunk.columns[i][row] = last.columns[i][lastRow];
+            chunkOf[moved.id()] = chunk;
+            rowOf[moved.id()] = row;
+        }
+        last.entities[lastRow] = null;
+        for (int i = 0; i < columns; i++)
+            last.columns[i][lastRow] = null;
+        last.count--;
+        archetype.onLastRowVacated();
+    }
+
+    protected Archetype archetype(ComponentMask mask) {
+        return getArchetype(mask);
+    }
+
+    /**
+     * @param mask the archetype mask. Copied if a new archetype is created
+     * @return the archetype of the mask
+     */
+    private Archetype getArchetype(ComponentMask mask) {
+        Archetype archetype = archetypeMap.get(mask);
+        if (archetype == null) {
+            final List<ComponentType> typeList = manager.typeManager.getList();
+            final ComponentType[] types = new ComponentType[mask.cardinality()];
+            int i = 0;
+            for (ComponentType type : typeList) {
+                if (mask.get(type.id()))
+                    types[i++] = type;
+            }
+            final ComponentMask key = mask.copy();
+            archetype = new Archetype(key,types,typeList.size(),chunkSize);
+            archetypeMap.put(key,archetype);
+            archetypes.push(archetype);
+            manager.ecs.systemManager.archetypeCreated(archetype);
+        } return archetype;
+    }
+
+    private void ensureCapacity(int entityID) {
+        if (entityID >= chunkOf.length) {
+            final int size = ((entityID + 1) * 3) / 2 + 1;
+            Chunk[] chunks = new Chunk[size];
+            int[] rows = new int[size];
+            System.arraycopy(chunkOf,0,chunks,0,chunkOf.length);
+            System.arraycopy(rowOf,0,rows,0,rowOf.length);
+            chunkOf = chunks;
+            rowOf = rows;
+        }
+    }
+
+    protected void iterate(int typeID, Iterator<Component> itr) {
+        for (int i = 0; i < archetypes.count(); i++) {
+            final Archetype archetype = archetypes.get(i);
+            final int column = archetype.column(typeID);
+            if (column < 0) continue;
+            for (int j = 0; j < archetype.chunkCount(); j++) {
+                final Chunk chunk = archetype.chunk(j);
+                final Component[] components = chunk.columns[column];
+                for (int row = 0; row < chunk.count; row++)
+                    itr.next(components[row]);
+            }
+        }
+    }
+
+    protected void beginIteration() {
+        iterating++;
+    }
+
+    protected void endIteration() {
+        iterating--;
+    }
+
+    protected Container<Archetype> archetypes() {
+        return archetypes;
+    }
+
+    protected int count(ComponentType t) {
+        int count = 0;
+        for (int i = 0; i < archetypes.count(); i++) {
+            Archetype archetype = archetypes.get(i);
+            if (archetype.column(t.id()) >= 0)
+                count += archetype.count();
+        } return count;
+    }
+
+    protected int capacity(ComponentType t) {
+        int capacity = 0;
+        for (int i = 0; i < archetypes.count(); i++) {
+            Archetype archetype = archetypes.get(i);
+            if (archetype.column(t.id()) >= 0)
+                capacity += archetype.capacity();
+        } return Math.max(capacity,1);
+    }
+
+    protected boolean fit(ComponentType t) {
+        boolean fitted = false;
+        for (int i = 0; i < archetypes.count(); i++) {
+            Archetype archetype = archetypes.get(i);
+            if (archetype.column(t.id()) >= 0)
+                if (archetype.fit()) fitted = true;
+        } return fitted;
+    }
+
+    protected void clear() {
+        archetypeMap.clear();
+        archetypes.clear();
+    }
+
+    @FunctionalInterface
+    protected interface RemovedComponent {
+        void removed(ComponentType type, Component c);
+    }
+}
@@ -41,9 +41,9 @@ public class CapacityControl {
     private static final short UP_TO_DATE           = 0xFF;
     private static final short INTERVAL             = 0x14;
 
-    private final short[] timers;
+    private short[] timers;
     private float accumulator;
-    private byte timerCount;
+    private int timerCount;
 
     private final ComponentManager manager;
 
@@ -58,7 +58,7 @@ public class CapacityControl {
         if (accumulator > INTERVAL) {
             accumulator -= INTERVAL;
             System.out.println(manager.ecs.runTimeStatistics().componentContainersLoadFactor());
-            for (byte i = 0; i < timerCount; i++) {
+            for (int i = 0; i < timerCount; i++) {
                 if (timers[i] != UP_TO_DATE) {
                     if (!containerTimerMaxed(timers[i]))
                         if (containerTimerMaxed(++timers[i])){
@@ -73,14 +73,19 @@ public class CapacityControl {
     }
 
     protected void newTimer() {
+        if (timerCount == timers.length) {
+            final int length = timers.length;
+            timers = Arrays.copyOf(timers, length * 2);
+            Arrays.fill(timers, length, timers.length, UP_TO_DATE);
+        }
         timerCount++;
     }
 
-    protected void resetContainerTimer(byte index) {
+    protected void resetContainerTimer(int index) {
         timers[index] &= ~CONTAINER_CHECKED;
     }
 
-    protected void resetPoolTimer(byte index) {
+    protected void resetPoolTimer(int index) {
         timers[index] &= ~POOL_CHECKED;
     }
 
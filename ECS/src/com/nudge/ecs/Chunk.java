@@ -0,0 +1,68 @@
+package com.nudge.ecs;
+
+/**
+ *
+ * A fixed-size block of entities sharing the same Archetype.
+ * Each component type of the archetype has its own column, and the entity
+ * in row i of the chunk owns the component in row i of every column.
+ *
+ * Chunks are always tightly packed. Removing an entity moves the last entity
+ * of the archetype into the hole. So only the last chunk of an archetype can be partially filled.
+ *
+ * Systems can iterate the chunks of their matching archetypes (ECSystem.processChunks())
+ * instead of looking components up entity by entity.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class Chunk {
+
+    private final Archetype archetype;
+    protected final Entity[] entities;
+    protected final Component[][] columns;
+    protected int count;
+
+    protected Chunk(Archetype archetype, int size) {
+        this.archetype = archetype;
+        this.entities = new Entity[size];
+        this.columns = new Component[archetype.typeCount()][size];
+    }
+
+    public Archetype archetype() {
+        return archetype;
+    }
+
+    public Entity entity(int row) {
+        return entities[row];
+    }
+
+    /**
+     * The column holding all components of type t in this chunk.
+     * Only the rows 0 to count() - 1 are valid.
+     *
+     * @param t the component type
+     * @return the column, or null if the type is not part of the archetype
+     */
+    public Component[] components(ComponentType t) {
+        final int column = archetype.column(t.id());
+        return column < 0 ? null : columns[column];
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int capacity() {
+        return entities.length;
+    }
+
+    public boolean isFull() {
+        return count == entities.length;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+}
@@ -0,0 +1,84 @@
+package com.nudge.ecs;
+
+/**
+ * The Getter of primitive column components. (See Columns)
+ *
+ * A reusable flyweight. Point it at an entity with at(e), then read and write the
+ * entity's fields by column index. No component objects, no allocation.
+ *
+ *     ColumnAccessor<Motion> m = ecs.accessor(Motion.class);
+ *     m.at(e).addFloat(motion.X, m.getFloat(motion.VX) * dt);
+ *
+ * Keep one accessor per system (per thread). Like the Getter, it does not check whether
+ * the entity has the component. Only rows below the columns' capacity() exist. It covers every
+ * entity that has had the component. Below it, entities without the component read zero.
+ * Ids at or beyond it throw an ArrayIndexOutOfBoundsException.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class ColumnAccessor<T extends Columns> {
+
+    private final T columns;
+    private int row;
+
+    protected ColumnAccessor(T columns) {
+        this.columns = columns;
+    }
+
+    public final ColumnAccessor<T> at(Entity e) {
+        this.row = e.id();
+        return this;
+    }
+
+    public final ColumnAccessor<T> at(int entityID) {
+        this.row = entityID;
+        return this;
+    }
+
+    public final T columns() {
+        return columns;
+    }
+
+    public final int row() {
+        return row;
+    }
+
+    public final float getFloat(int column) {
+        return columns.floats[column][row];
+    }
+
+    public final void setFloat(int column, float value) {
+        columns.floats[column][row] = value;
+    }
+
+    public final void addFloat(int column, float value) {
+        columns.floats[column][row] += value;
+    }
+
+    public final int getInt(int column) {
+        return columns.ints[column][row];
+    }
+
+    public final void setInt(int column, int value) {
+        columns.ints[column][row] = value;
+    }
+
+    public final void addInt(int column, int value) {
+        columns.ints[column][row] += value;
+    }
+
+    public final long getLong(int column) {
+        return columns.longs[column][row];
+    }
+
+    public final void setLong(int column, long value) {
+        columns.longs[column][row] = value;
+    }
+
+    public final void addLong(int column, long value) {
+        columns.longs[column][row] += value;
+    }
+}
@@ -0,0 +1,108 @@
+package com.nudge.ecs;
+
+/**
+ * Bulk operations on primitive columns. (See Columns)
+ *
+ * The range kernels run a plain counted loop over a contiguous range of two arrays, with no
+ * calls or branches in the body. That is the form the JIT (C2) unrolls and compiles to SIMD
+ * instructions (SSE / AVX) on its own. The row kernels go through a buffer of entity ids instead
+ * (see rows()), one row at a time. That is the fallback for when the entities are a sparse part of the rows,
+ * or not every entity with the component should be updated.
+ *
+ *     // pos += vel * dt, for every entity with the component
+ *     motion.addScaled(motion.X, motion.VX, dt);
+ *     motion.addScaled(motion.Y, motion.VY, dt);
+ *
+ * Rows without the component are zero, so a range kernel can run over rows that are not in use.
+ * Like the ColumnAccessor, nothing is checked besides the array bounds.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public final class ColumnKernels {
+
+    private ColumnKernels() { }
+
+    /**
+     * dst[i] += src[i] * scale, for i in [from, to)
+     */
+    public static void addScaled(float[] dst, float[] src, float scale, int from, int to) {
+        for (int i = from; i < to; i++)
+            dst[i] += src[i] * scale;
+    }
+
+    /**
+     * dst[i] += src[i], for i in [from, to)
+     */
+    public static void add(float[] dst, float[] src, int from, int to) {
+        for (int i = from; i < to; i++)
+            dst[i] += src[i];
+    }
+
+    /**
+     * dst[i] *= scale, for i in [from, to)
+     */
+    public static void scale(float[] dst, float scale, int from, int to) {
+        for (int i = from; i < to; i++)
+            dst[i] *= scale;
+    }
+
+    /**
+     * dst[i] = min(max(dst[i], min), max), for i in [from, to)
+     */
+    public static void clamp(float[] dst, float min, float max, int from, int to) {
+        for (int i = from; i < to; i++)
+            dst[i] = Math.min(Math.max(dst[i],min),max);
+    }
+
+    public static void fill(float[] dst, float value, int from, int to) {
+        for (int i = from; i < to; i++)
+            dst[i] = value;
+    }
+
+    /**
+     * Writes the ids of the entities into a row buffer, for the row kernels.
+     * Gather once per frame and reuse the rows for every column.
+     *
+     * @param entities the entities, i.e. of a system
+     * @param rows the buffer. Replaced if too small
+     * @return the buffer holding the ids. The first entities.count() are valid
+     */
+    public static int[] rows(EntityArray entities, int[] rows) {
+        final int count = entities.count();
+        if (rows == null || rows.length < count) rows = new int[Math.max(16,count + (count >> 1))];
+        for (int i = 0; i < count; i++)
+            rows[i] = entities.get(i).id();
+        return rows;
+    }
+
+    /**
+     * dst[row] += src[row] * scale, for the first count rows
+     */
+    public static void addScaled(float[] dst, float[] src, float scale, int[] rows, int count) {
+        for (int i = 0; i < count; i++) {
+            final int row = rows[i];
+            dst[row] += src[row] * scale;
+        }
+    }
+
+    /**
+     * dst[row] += src[row], for the first count rows
+     */
+    public static void add(float[] dst, float[] src, int[] rows, int count) {
+        for (int i = 0; i < count; i++) {
+            final int row = rows[i];
+            dst[row] += src[row];
+        }
+    }
+
+    /**
+     * dst[row] *= scale, for the first count rows
+     */
+    public static void scale(float[] dst, float scale, int[] rows, int count) {
+        for (int i = 0; i < count; i++)
+            dst[rows[i]] *= scale;
+    }
+}
@@ -0,0 +1,218 @@
+package com.nudge.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * A component declared as a schema of primitive fields (columns).
+ * Instead of one object per entity, the data of every entity is stored in float[], int[] and long[]
+ * columns indexed by entity id. (Struct of arrays)
+ *
+ * Declare the columns in the subclass field initializers. The returned value is the column index:
+ *
+ *     public class Motion extends Columns {
+ *         public final int X = floatColumn("x");
+ *         public final int Y = floatColumn("y");
+ *     }
+ *
+ * Register ONE instance per class before the ECS is initialized: ecs.registerColumns(new Motion());
+ * That instance is the component you add to (and remove from) entities. Every entity shares it,
+ * so it works with groups, systems and getters like any other component.
+ * The entity's row is zeroed when the component is removed.
+ *
+ * Read and write the data with a ColumnAccessor (ecs.accessor(Motion.class)), or directly by entity id.
+ * Columns can not be pooled.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public abstract class Columns implements Component {
+
+    private final List<String> floatNames = new ArrayList<>();
+    private final List<String> intNames = new ArrayList<>();
+    private final List<String> longNames = new ArrayList<>();
+
+    protected float[][] floats = new float[0][];
+    protected int[][] ints = new int[0][];
+    protected long[][] longs = new long[0][];
+
+    private int capacity;
+    private ComponentType type;
+
+    protected Columns(int initialCapacity) {
+        this.capacity = Math.max(initialCapacity,1);
+    }
+
+    protected Columns() {
+        this(64);
+    }
+
+    protected final int floatColumn(String name) {
+        checkSchemaOpen();
+        floats = Arrays.copyOf(floats, floats.length + 1);
+        floats[floats.length - 1] = new float[capacity];
+        floatNames.add(name);
+        return floats.length - 1;
+    }
+
+    protected final int intColumn(String name) {
+        checkSchemaOpen();
+        ints = Arrays.copyOf(ints, ints.length + 1);
+        ints[ints.length - 1] = new int[capacity];
+        intNames.add(name);
+        return ints.length - 1;
+    }
+
+    protected final int longColumn(String name) {
+        checkSchemaOpen();
+        longs = Arrays.copyOf(longs, longs.length + 1);
+        longs[longs.length - 1] = new long[capacity];
+        longNames.add(name);
+        return longs.length - 1;
+    }
+
+    public final float getFloat(int column, int entityID) {
+        return floats[column][entityID];
+    }
+
+    public final void setFloat(int column, int entityID, float value) {
+        floats[column][entityID] = value;
+    }
+
+    public final int getInt(int column, int entityID) {
+        return ints[column][entityID];
+    }
+
+    public final void setInt(int column, int entityID, int value) {
+        ints[column][entityID] = value;
+    }
+
+    public final long getLong(int column, int entityID) {
+        return longs[column][entityID];
+    }
+
+    public final void setLong(int column, int entityID, long value) {
+        longs[column][entityID] = value;
+    }
+
+    /**
+     * The backing array of the column. Indexed by entity id, up to capacity(). (Ids of entities
+     * that never had the component can be beyond it) Rows of entities without the component are zero.
+     * The array is replaced when the columns grow, so do not keep the reference across structural changes.
+     *
+     * @param column the column index
+     * @return the float column
+     */
+    public final float[] floatColumn(int column) {
+        return floats[column];
+    }
+
+    public final int[] intColumn(int column) {
+        return ints[column];
+    }
+
+    public final long[] longColumn(int column) {
+        return longs[column];
+    }
+
+    /**
+     * dst += src * scale, over whole columns. (See ColumnKernels)
+     * Updates every entity with the component. Rows below capacity() without it stay zero.
+     *
+     * @param dst the float column written to
+     * @param src the float column read
+     * @param scale the factor, i.e. delta time
+     */
+    public final void addScaled(int dst, int src, float scale) {
+        ColumnKernels.addScaled(floats[dst],floats[src],scale,0,capacity);
+    }
+
+    /**
+     * dst += src * scale, for the given rows only. i.e. the entities of a system
+     * when not every entity with the component is in it. (See ColumnKernels.rows())
+     * The rows must be below capacity(). Entities with the component always are.
+     */
+    public final void addScaled(int dst, int src, float scale, int[] rows, int count) {
+        ColumnKernels.addScaled(floats[dst],floats[src],scale,rows,count);
+    }
+
+    public final String floatName(int column) {
+        return floatNames.get(column);
+    }
+
+    public final String intName(int column) {
+        return intNames.get(column);
+    }
+
+    public final String longName(int column) {
+        return longNames.get(column);
+    }
+
+    public final int floatColumns() {
+        return floats.length;
+    }
+
+    public final int intColumns() {
+        return ints.length;
+    }
+
+    public final int longColumns() {
+        return longs.length;
+    }
+
+    /**
+     * @return the number of rows (entity ids) covered by the columns
+     */
+    public final int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the registered type, or null if not registered
+     */
+    public final ComponentType componentType() {
+        return type;
+    }
+
+    /**
+     * @return the bytes allocated by all columns
+     */
+    public long sizeInBytes() {
+        return (long) capacity * (floats.length * Float.BYTES + ints.length * Integer.BYTES + longs.length * Long.BYTES);
+    }
+
+    protected final void register(ComponentType type) {
+        this.type = type;
+    }
+
+    // Called by the ComponentManager when the component is added to an entity
+    protected void ensureRow(int entityID) {
+        if (entityID >= capacity) {
+            capacity = ((entityID + 1) * 3) / 2 + 1;
+            for (int i = 0; i < floats.length; i++)
+                floats[i] = Arrays.copyOf(floats[i],capacity);
+            for (int i = 0; i < ints.length; i++)
+                ints[i] = Arrays.copyOf(ints[i],capacity);
+            for (int i = 0; i < longs.length; i++)
+                longs[i] = Arrays.copyOf(longs[i],capacity);
+        }
+    }
+
+    // Called by the ComponentManager when the component is removed from an entity
+    protected void clearRow(int entityID) {
+        for (float[] column : floats)
+            column[entityID] = 0f;
+        for (int[] column : ints)
+            column[entityID] = 0;
+        for (long[] column : longs)
+            column[entityID] = 0L;
+    }
+
+    private void checkSchemaOpen() {
+        if (type != null) throw new IllegalStateException("Declare columns before registering");
+    }
+}
@@ -0,0 +1,238 @@
+package com.nudge.ecs;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Records structural changes (create, add / remove components, enable / disable, destroy)
+ * to be played back later, at a sync point. Every ECSystem has one (commands()) that is played
+ * back straight after the system is done processing. Or create your own with ECS.commandBuffer().
+ *
+ * Recording does not allocate. The commands are kept in primitive arrays that grow when full,
+ * and keep their size after playback.
+ *
+ * Entities are referenced by handles (see EntityManager.handle()). create() returns a provisional
+ * handle that can be used in the commands of the same buffer. It is resolved on playback.
+ * Commands on entities deleted before playback are skipped.
+ *
+ * Playback is sorted, not in order of recording:
+ *
+ * 1. Creates
+ * 2. Component adds / removes, grouped by type. (In order of recording for each type)
+ * 3. Enable / disable. (In order of recording)
+ * 4. Destroys. A destroy wins over any other command of the buffer on the same entity.
+ *
+ * Each touched entity is refreshed once, and revalidated once on the next clean.
+ *
+ * A buffer is not thread safe. Use one buffer per thread.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class CommandBuffer {
+
+    private static final byte CREATE = 0;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte ENABLE = 3;
+    private static final byte DISABLE = 4;
+    private static final byte DESTROY = 5;
+
+    private static final long PHASE_CREATE = 0L;
+    private static final long PHASE_COMPONENT = 1L << 60;
+    private static final long PHASE_STATE = 2L << 60;
+    private static final long PHASE_DESTROY = 3L << 60;
+
+    private final EntityManager entityManager;
+    private final ComponentManager componentManager;
+
+    private byte[] ops;
+    private long[] targets;
+    private int[] types;
+    private Component[] components;
+    private long[] sortKeys;
+    private Entity[] created;
+    private int count;
+    private int creates;
+
+    protected CommandBuffer(ECS ecs, int initialCap) {
+        this.entityManager = ecs.entityManager;
+        this.componentManager = ecs.componentManager;
+        initialCap = Math.max(initialCap,1);
+        ops = new byte[initialCap];
+        targets = new long[initialCap];
+        types = new int[initialCap];
+        components = new Component[initialCap];
+        sortKeys = new long[initialCap];
+        created = new Entity[0];
+    }
+
+    /**
+     * @return a provisional handle of the entity to be created. Only valid in this buffer
+     */
+    public long create() {
+        final long provisional = -2L - creates++;
+        record(CREATE,provisional,0,null);
+        return provisional;
+    }
+
+    public void addComponent(long handle, Component c) {
+        if (c == null) throw new IllegalStateException("null Component");
+        record(ADD,handle,componentManager.getType(c.getClass()).id(),c);
+    }
+
+    public void addComponent(Entity e, Component c) {
+        addComponent(entityManager.handle(e),c);
+    }
+
+    public void removeComponent(long handle, ComponentType t) {
+        record(REMOVE,handle,t.id(),null);
+    }
+
+    public void removeComponent(Entity e, ComponentType t) {
+        removeComponent(entityManager.handle(e),t);
+    }
+
+    public void enable(long handle) {
+        record(ENABLE,handle,0,null);
+    }
+
+    public void enable(Entity e) {
+        enable(entityManager.handle(e));
+    }
+
+    public void disable(long handle) {
+        record(DISABLE,handle,0,null);
+    }
+
+    public void disable(Entity e) {
+        disable(entityManager.handle(e));
+    }
+
+    /**
+     * Removes all components of the entity on playback. (EntityManager.remove())
+     */
+    public void destroy(long handle) {
+        record(DESTROY,handle,0,null);
+    }
+
+    public void destroy(Entity e) {
+        destroy(entityManager.handle(e));
+    }
+
+    /**
+     * Plays back and clears the recorded commands. Structural changes are not allowed
+     * while chunks are iterated (ECSystem.processChunks()), so do not play back from inside it.
+     */
+    public void playback() {
+        if (count == 0) return;
+        if (creates > created.length)
+            created = new Entity[creates];
+        for (int i = 0; i < count; i++)
+            sortKeys[i] = phase(i) | ((long) types[i] << 32) | i;
+        Arrays.sort(sortKeys,0,count);
+        int token = 0;
+        for (int k = 0; k < count; k++) {
+            final int i = (int) sortKeys[k];
+            if (ops[i] == CREATE) {
+                created[token++] = entityManager.create();
+                continue;
+            }
+            final Entity e = resolve(targets[i]);
+            if (e == null) continue;
+            switch (ops[i]) {
+                case ADD: entityManager.addComponent(e,components[i]); break;
+                case REMOVE: entityManager.removeComponent(e,componentManager.typeManager.getType(types[i])); break;
+                case ENABLE: entityManager.enable(e); break;
+                case DISABLE: entityManager.disable(e); break;
+                case DESTROY: entityManager.remove(e); break;
+            }
+        }
+        clear();
+    }
+
+    /**
+     * Appends the commands of src, as if recorded here. Provisional handles of src are remapped.
+     *
+     * @param src another buffer (unchanged)
+     */
+    public void append(CommandBuffer src) {
+        final int offset = creates;
+        for (int i = 0; i < src.count; i++) {
+            long target = src.targets[i];
+            if (isProvisional(target))
+                target -= offset;
+            if (src.ops[i] == CREATE) creates++;
+            record(src.ops[i],target,src.types[i],src.components[i]);
+        }
+    }
+
+    /**
+     * Discards the recorded commands
+     */
+    public void clear() {
+        for (int i = 0; i < count; i++)
+            components[i] = null;
+        final int resolved = Math.min(creates,created.length);
+        for (int i = 0; i < resolved; i++)
+            created[i] = null;
+        count = 0;
+        creates = 0;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public boolean notEmpty() {
+        return count > 0;
+    }
+
+    public int capacity() {
+        return ops.length;
+    }
+
+    public static boolean isProvisional(long handle) {
+        return handle < EntityManager.NULL_HANDLE;
+    }
+
+    private Entity resolve(long handle) {
+        if (isProvisional(handle)) {
+            final int token = (int) (-2L - handle);
+            return token < creates ? created[token] : null;
+        } return entityManager.get(handle);
+    }
+
+    private long phase(int i) {
+        switch (ops[i]) {
+            case CREATE: return PHASE_CREATE;
+            case ADD: case REMOVE: return PHASE_COMPONENT;
+            case ENABLE: case DISABLE: return PHASE_STATE;
+            default: return PHASE_DESTROY;
+        }
+    }
+
+    private void record(byte op, long target, int type, Component c) {
+        if (count == ops.length) grow();
+        ops[count] = op;
+        targets[count] = target;
+        types[count] = type;
+        components[count] = c;
+        count++;
+    }
+
+    private void grow() {
+        final int size = ((count + 1) * 3) / 2 + 1;
+        ops = Arrays.copyOf(ops,size);
+        targets = Arrays.copyOf(targets,size);
+        types = Arrays.copyOf(types,size);
+        components = Arrays.copyOf(components,size);
+        sortKeys = Arrays.copyOf(sortKeys,size);
+    }
+}
@@ -9,10 +9,10 @@ package com.nudge.ecs;
 public class ComponentGroup {
 
     private String name;
-    private final long mask;
+    private final ComponentMask mask;
     private final short id;
 
-    protected ComponentGroup(long mask, short id) {
+    protected ComponentGroup(ComponentMask mask, short id) {
         this.mask = mask;
         this.id = id;
         name = "ComponentGroup_" + id;
@@ -34,19 +34,19 @@ public class ComponentGroup {
         return id;
     }
 
-    protected boolean match(long bits) {
-        return mask == bits;
+    protected boolean match(ComponentMask bits) {
+        return mask.equals(bits);
     }
 
-    protected boolean containsAny(long bits) {
-        return (bits & mask) > 0;
+    protected boolean containsAny(ComponentMask bits) {
+        return bits.intersects(mask);
     }
 
-    protected boolean containsAll(long bits) {
-        return mask == (mask & bits);
+    protected boolean containsAll(ComponentMask bits) {
+        return bits.containsAll(mask);
     }
 
-    protected long mask() {
+    protected ComponentMask mask() {
         return mask;
     }
 }
@@ -2,13 +2,25 @@ package com.nudge.ecs;
 
 
 import com.nudge.ecs.util.containers.Container;
+import com.nudge.ecs.util.containers.IndexedContainer;
+import com.nudge.ecs.util.containers.Iterator;
+import com.nudge.ecs.util.containers.SparseSet;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
  * Components are stored and queried here.
  * Components are indexed by type and entity-id.
+ * Each type has its own container. A Container by default, or a paged SparseSet for rarely used types.
+ * Or, with archetype storage enabled, by archetype chunk and row (See ArchetypeStorage).
+ *
+ * Types can track changes: The tick of the last change, by type and entity-id.
+ * Components added or replaced are changed. So are components marked through a Getter.
+ * The global change tick is advanced at the start and end of every system run.
  *
  * @author Frederik Dahl
  * 01/09/2021
@@ -22,7 +34,12 @@ public class ComponentManager {
     protected final TypeManager typeManager;
     protected final CapacityControl control;
 
-    private final Container<Container<Component>> components;
+    private final Container<IndexedContainer<Component>> components;
+    private final ArchetypeStorage.RemovedComponent freeRemoved = this::freeRemoved;
+    private final List<ComponentType> columnTypes;
+    private ArchetypeStorage archetypes;
+    private final AtomicLong changeTick = new AtomicLong(1); // long: never wraps
+    private long[][] changeTicks = new long[0][]; // by type, then entity. null if not tracked
 
     private int active      = 0;    // components in play
     private long added      = 0L;   // total number of components added
@@ -37,7 +54,8 @@ public class ComponentManager {
         pools = new ComponentPools(this);
         typeManager = new TypeManager(this);
         control = new CapacityControl(this);
-        components = new Container<>(9); // 9 hits 64 (Max) on resizing // todo: make sure to keep this in mind
+        columnTypes = new ArrayList<>();
+        components = new Container<>(9); // 9 hits 64 on resizing
     }
     
     // this is happening after entityManager termination.
@@ -53,6 +71,115 @@ public class ComponentManager {
     protected void nullify() { // do this after diagnostics await Termination;
         components.clear();
         pools.nullifyPools();
+        if (archetypes != null)
+            archetypes.clear();
+        for (ComponentType t : columnTypes) {
+            if (t.columns() instanceof OffHeapColumns)
+                ((OffHeapColumns) t.columns()).release();
+        }
+    }
+
+    protected void useArchetypeStorage(int chunkSize, int initialCap) {
+        if (active > 0)
+            throw new IllegalStateException("Enable archetype storage before adding components");
+        archetypes = new ArchetypeStorage(this,chunkSize,initialCap);
+    }
+
+    /**
+     * Replaces the (empty) container of the type with a paged SparseSet.
+     * Has no effect on archetype storage.
+     *
+     * @param t the type
+     * @param pageSize the sparse page size
+     */
+    protected void useSparseStorage(ComponentType t, int pageSize) {
+        final IndexedContainer<Component> container = components.get(t.id());
+        if (container.notEmpty())
+            throw new IllegalStateException("Container for type: " + t.name() + " is not empty");
+        components.set(new SparseSet<>(SparseSet.DEFAULT_CAPACITY,pageSize),t.id());
+    }
+
+    /**
+     * Starts tracking the change ticks of the type. Components already added count as unchanged.
+     * The ticks cover every entity id. They grow with the entity arrays when new ids are created,
+     * on the thread creating entities. Never while marking, so marking from parallel workers is safe.
+     *
+     * @param t the type
+     */
+    protected void trackChanges(ComponentType t) {
+        final int typeID = t.id();
+        if (typeID >= changeTicks.length)
+            changeTicks = Arrays.copyOf(changeTicks,typeID + 1);
+        if (changeTicks[typeID] == null)
+            changeTicks[typeID] = new long[ecs.entityManager.idCapacity()];
+    }
+
+    // Called by the EntityManager when the entity id arrays grow
+    protected void ensureChangeTicks(int size) {
+        final long[][] byType = changeTicks;
+        for (int i = 0; i < byType.length; i++) {
+            final long[] ticks = byType[i];
+            if (ticks != null && ticks.length < size)
+                byType[i] = Arrays.copyOf(ticks,size);
+        }
+    }
+
+    protected boolean tracksChanges(ComponentType t) {
+        final int typeID = t.id();
+        return typeID < changeTicks.length && changeTicks[typeID] != null;
+    }
+
+    protected long changeTick() {
+        return changeTick.get();
+    }
+
+    protected long advanceChangeTick() {
+        return changeTick.incrementAndGet();
+    }
+
+    /**
+     * Sets the change tick of the entity's component to the current tick. No effect if the type is not tracked
+     */
+    protected void markChanged(int entityID, int typeID) {
+        final long[][] byType = changeTicks;
+        if (typeID < byType.length) {
+            final long[] ticks = byType[typeID];
+            if (ticks != null) ticks[entityID] = changeTick.get(); // sized to the entity ids
+        }
+    }
+
+    /**
+     * @return the tick of the last change of the entity's component. 0 if never changed or not tracked
+     */
+    protected long changedTick(int entityID, int typeID) {
+        final long[][] byType = changeTicks;
+        if (typeID < byType.length) {
+            final long[] ticks = byType[typeID];
+            if (ticks != null && entityID < ticks.length)
+                return ticks[entityID];
+        } return 0;
+    }
+
+    protected ArchetypeStorage archetypes() {
+        return archetypes;
+    }
+
+    protected <T extends Columns> void registerColumns(T columns) {
+        final ComponentType type = getType(columns.getClass());
+        if (type.columns() != null)
+            throw new IllegalStateException("Columns already registered for type: " + type.name());
+        if (pools.getPool(type) != null)
+            throw new IllegalStateException("Columns can not be pooled");
+        type.setColumns(columns);
+        columns.register(type);
+        columnTypes.add(type);
+    }
+
+    protected <T extends Columns> T getColumns(Class<T> clazz) {
+        final Columns columns = getType(clazz).columns();
+        if (columns == null)
+            throw new IllegalStateException("No Columns registered for: " + clazz.getSimpleName());
+        return clazz.cast(columns);
     }
 
     protected <T extends Component> void registerPool(ComponentPool<T> pool, Class<T> clazz) {
@@ -73,45 +200,110 @@ public class ComponentManager {
             throw new IllegalStateException("null Component");
         boolean shouldRefreshEntity;
         final ComponentType type = getType(c.getClass());
-        final byte typeID = type.id();
-        if (e.hasComponent(type.flag())) {
-            final Component removed = removeComponentFromContainer(e.id(),typeID);
+        final int typeID = type.id();
+        final Columns columns = type.columns();
+        if (columns != null) {
+            if (columns != c) throw new IllegalArgumentException("Use the registered Columns instance");
+            columns.ensureRow(e.id());
+        }
+        if (e.hasComponent(type)) {
+            final Component removed;
+            if (archetypes == null) {
+                removed = removeComponentFromContainer(e.id(),typeID);
+                components.get(typeID).set(c,e.id());
+            } else removed = archetypes.set(e.id(),typeID,c);
             if (removed == null) throw new IllegalStateException("Component should not be null atp");
-            // explicitly typed for readability. see the tryFree() def.
-            final boolean lostReference = pools.tryFree(c,type);
-            if (lostReference) lost++;
+            free(removed,type);
             shouldRefreshEntity = false;
         } else {
             shouldRefreshEntity = true;
-            e.addComponent(type.flag());
+            if (archetypes == null)
+                components.get(typeID).set(c,e.id());
+            else archetypes.add(e,type,c);
+            e.addComponent(type);
             control.resetContainerTimer(typeID);
             added++;
             active++;
-        }
-        components.get(typeID).set(c,e.id());
+        } markChanged(e.id(),typeID);
         return shouldRefreshEntity;
     }
 
+    /**
+     * Prepares the containers for n entities of the template
+     * @param bound the highest id of the batch + 1 (See EntityPool.idBound())
+     */
+    protected void beginBatch(Template t, int n, int bound) {
+        if (archetypes != null) return;
+        final ComponentType[] types = t.types();
+        for (ComponentType type : types)
+            components.get(type.id()).ensureCapacity(n,bound);
+    }
+
+    /**
+     * Adds the components of the template (filled by the initializer) to a new entity.
+     * The types are already resolved, and the entity has no components.
+     *
+     * @param e the entity
+     * @param t the template
+     */
+    protected void addBatch(Entity e, Template t) {
+        final ComponentType[] types = t.types();
+        final Component[] batch = t.components();
+        final int id = e.id();
+        for (int i = 0; i < types.length; i++) {
+            final Component c = batch[i];
+            final ComponentType type = types[i];
+            if (c == null) throw new IllegalStateException("Template slot " + i + " not set");
+            if (c.getClass() != type.componentClass())
+                throw new IllegalArgumentException("Template slot " + i + " expects " + type.componentClass().getSimpleName());
+            final Columns columns = type.columns();
+            if (columns != null) {
+                if (columns != c) throw new IllegalArgumentException("Use the registered Columns instance");
+                columns.ensureRow(id);
+            }
+        }
+        if (archetypes != null)
+            archetypes.insert(e,t.archetype(archetypes),batch);
+        for (int i = 0; i < types.length; i++) {
+            final int typeID = types[i].id();
+            if (archetypes == null)
+                components.get(typeID).set(batch[i],id);
+            e.addComponent(types[i]);
+            control.resetContainerTimer(typeID);
+            markChanged(id,typeID);
+        }
+        added += types.length;
+        active += types.length;
+    }
+
     protected void removeAll(Entity e) {
         // entity is checked if it has any components before this method-call.
         // so we know the entity has at least one component atp
         // exceptions should be removed after testing stages
+        for (int i = 0; i < columnTypes.size(); i++) {
+            final ComponentType t = columnTypes.get(i);
+            if (e.hasComponent(t))
+                t.columns().clearRow(e.id());
+        }
+        if (archetypes != null) {
+            archetypes.removeAll(e,freeRemoved);
+            e.clearComponents();
+            return;
+        }
         Component c;
-        Container<Component> byType;
+        IndexedContainer<Component> byType;
         for (ComponentType t: typeManager.getList()) {
-            if (!e.hasComponent(t.flag()))
+            if (!e.hasComponent(t))
                 continue;
             byType = components.get(t.id());
             c = byType.remove(e.id());
             if (c == null)
                 throw new IllegalStateException("Component should not be null atp");
-            e.removeComponent(t.flag());
+            e.removeComponent(t);
             removed++;
             active--;
             control.resetContainerTimer(t.id());
-            // explicitly typed for readability. see the tryFree() def.
-            final boolean lostReference = pools.tryFree(c,t);
-            if (lostReference) lost++;
+            free(c,t);
         }
     }
 
@@ -124,15 +316,17 @@ public class ComponentManager {
      * @return whether the component was found and the entity should refresh.
      */
     protected boolean removeComponent(Entity e, ComponentType t) {
-        if (!e.hasComponent(t.flag())) return false;
-        final byte typeID = t.id();
-        final Component c = removeComponentFromContainer(e.id(),typeID);
+        if (!e.hasComponent(t)) return false;
+        final int typeID = t.id();
+        final Component c = archetypes == null ?
+                removeComponentFromContainer(e.id(),typeID) :
+                archetypes.remove(e,t);
         if (c == null) // if no component found, but entity's flag is true
             throw new IllegalStateException("Component should not be null atp");
-        e.removeComponent(t.flag());
-        // explicitly typed for readability. see the tryFree() def.
-        final boolean lostReference = pools.tryFree(c,t);
-        if (lostReference) lost++;
+        e.removeComponent(t);
+        if (t.columns() != null)
+            t.columns().clearRow(e.id());
+        free(c,t);
         control.resetContainerTimer(typeID);
         removed++;
         active--;
@@ -152,8 +346,25 @@ public class ComponentManager {
         return removeComponent(e,getType(c.getClass()));
     }
 
-    private Component removeComponentFromContainer(int entityID, byte typeID) {
-       final Container<Component> container = components.get(typeID);
+    // callback from ArchetypeStorage.removeAll()
+    private void freeRemoved(ComponentType t, Component c) {
+        if (c == null)
+            throw new IllegalStateException("Component should not be null atp");
+        removed++;
+        active--;
+        control.resetContainerTimer(t.id());
+        free(c,t);
+    }
+
+    private void free(Component c, ComponentType t) {
+        if (t.columns() != null) return; // shared instance, nothing to pool or lose
+        // explicitly typed for readability. see the tryFree() def.
+        final boolean lostReference = pools.tryFree(c,t);
+        if (lostReference) lost++;
+    }
+
+    private Component removeComponentFromContainer(int entityID, int typeID) {
+       final IndexedContainer<Component> container = components.get(typeID);
         if (entityID < container.usedSpace())
             return container.remove(entityID);
         return null;
@@ -168,7 +379,9 @@ public class ComponentManager {
      * @param typeID the type
      * @return the component
      */
-    protected Component getComponentUnsafe(int entityID, byte typeID) {
+    protected Component getComponentUnsafe(int entityID, int typeID) {
+        if (archetypes != null)
+            return archetypes.get(entityID,typeID);
         return components.get(typeID).get(entityID);
     }
 
@@ -176,14 +389,29 @@ public class ComponentManager {
         return getComponent(e.id(), t.id());
     }
 
-    protected Component getComponent(int entityID, byte typeID) {
-        final Container<Component> byType = components.get(typeID);
+    protected Component getComponent(int entityID, int typeID) {
+        if (archetypes != null)
+            return archetypes.getChecked(entityID,typeID);
+        final IndexedContainer<Component> byType = components.get(typeID);
         if (entityID < byType.usedSpace())
             return byType.get(entityID);
         return null;
     }
 
 
+    /**
+     * Iterates all components of the type. Dense for SparseSet storage,
+     * and chunk by chunk for archetype storage.
+     *
+     * @param typeID the type
+     * @param itr the iterator
+     */
+    protected void iterate(int typeID, Iterator<Component> itr) {
+        if (archetypes != null)
+            archetypes.iterate(typeID,itr);
+        else components.get(typeID).iterate(itr);
+    }
+
     // Type getter/creators - public in ECS
 
     protected ComponentType getType(Class<? extends Component> c) {
@@ -227,17 +455,36 @@ public class ComponentManager {
     }
 
     protected int getContainerSize(ComponentType t) {
+        if (archetypes != null)
+            return archetypes.count(t);
         return components.get(t.id()).count();
     }
 
     protected int getContainerCapacity(ComponentType t) {
+        if (archetypes != null)
+            return archetypes.capacity(t);
         return components.get(t.id()).capacity();
     }
 
     protected float getContainerLoadFactor(ComponentType t) {
+        if (archetypes != null)
+            return (float) archetypes.count(t) / archetypes.capacity(t);
         return components.get(t.id()).loadFactor();
     }
 
+    protected long getOffHeapBytes(ComponentType t) {
+        if (t.columns() instanceof OffHeapColumns)
+            return ((OffHeapColumns) t.columns()).offHeapBytes();
+        return 0L;
+    }
+
+    protected long getOffHeapBytes() {
+        long bytes = 0L;
+        for (int i = 0; i < columnTypes.size(); i++)
+            bytes += getOffHeapBytes(columnTypes.get(i));
+        return bytes;
+    }
+
     protected float getContainersLoadFactor() {
         final List<ComponentType> typesList = typeManager.getList();
         if (typesList.isEmpty())
@@ -262,14 +509,17 @@ public class ComponentManager {
     }
 
     // callback from ContainerControl
-    protected void attemptRefitContainer(byte typeID) {
-        if (components.get(typeID).fit(false))
+    protected void attemptRefitContainer(int typeID) {
+        if (archetypes != null) {
+            if (archetypes.fit(typeManager.getType(typeID)))
+                containerRefits++;
+        } else if (components.get(typeID).fit(false))
             containerRefits++;
 
     }
 
     // callback from ContainerControl
-    protected void attemptRefitPool(byte typeID) {
+    protected void attemptRefitPool(int typeID) {
         if (pools.getPools().get(typeID).fit())
             poolRefits++;
     }
@@ -0,0 +1,235 @@
+package com.nudge.ecs;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Bitmask of component types, indexed by ComponentType.id().
+ * Used for an entity's components, group requirements, archetypes and pool flags.
+ *
+ * The first 64 types live in a single long. Any types beyond that are kept in additional words.
+ * The width is set at ECS initialization from the number of registered types.
+ * (Masks created before initialization grow on demand)
+ * Masks of different widths compare as if the shorter one was padded with zero-words.
+ *
+ * With 64 types or less, no checks touch more than the single long and an array length,
+ * and nothing here allocates. (Except copy())
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public final class ComponentMask {
+
+    private static final long[] NO_WORDS = new long[0];
+
+    private long word;
+    private long[] words;
+
+    protected ComponentMask(int width) {
+        words = width > 1 ? new long[width - 1] : NO_WORDS;
+    }
+
+    protected ComponentMask() {
+        this(1);
+    }
+
+    /**
+     * @param index the type id
+     * @return whether the bit of the type is set
+     */
+    public boolean get(int index) {
+        if (index < Long.SIZE)
+            return (word & (1L << index)) != 0;
+        final int w = (index >>> 6) - 1;
+        return w < words.length && (words[w] & (1L << index)) != 0;
+    }
+
+    public boolean get(ComponentType type) {
+        return get(type.id());
+    }
+
+    /**
+     * @param other another mask
+     * @return true if every bit set in other is also set in this mask
+     */
+    public boolean containsAll(ComponentMask other) {
+        if ((word & other.word) != other.word) return false;
+        return other.words.length == 0 || containsAllWords(other);
+    }
+
+    /**
+     * @param other another mask
+     * @return true if any bit set in other is also set in this mask
+     */
+    public boolean intersects(ComponentMask other) {
+        if ((word & other.word) != 0) return true;
+        return words.length != 0 && other.words.length != 0 && intersectsWords(other);
+    }
+
+    public boolean isEmpty() {
+        if (word != 0) return false;
+        for (long w : words)
+            if (w != 0) return false;
+        return true;
+    }
+
+    public boolean notEmpty() {
+        return !isEmpty();
+    }
+
+    public int cardinality() {
+        int count = Long.bitCount(word);
+        for (long w : words)
+            count += Long.bitCount(w);
+        return count;
+    }
+
+    /**
+     * @return the number of 64-bit words of the mask
+     */
+    public int width() {
+        return words.length + 1;
+    }
+
+    /**
+     * @return the first word. The flags of type 0 - 63
+     */
+    public long firstWord() {
+        return word;
+    }
+
+    /**
+     * @param from the index to start from (inclusive)
+     * @return the index of the next set bit, or -1 if none
+     */
+    public int nextSetBit(int from) {
+        if (from < Long.SIZE) {
+            final long w = word & (-1L << from);
+            if (w != 0) return Long.numberOfTrailingZeros(w);
+            from = Long.SIZE;
+        }
+        int i = (from >>> 6) - 1;
+        if (i >= words.length) return -1;
+        long w = words[i] & (-1L << from);
+        while (true) {
+            if (w != 0) return ((i + 1) << 6) + Long.numberOfTrailingZeros(w);
+            if (++i == words.length) return -1;
+            w = words[i];
+        }
+    }
+
+    public ComponentMask copy() {
+        ComponentMask copy = new ComponentMask(width());
+        copy.set(this);
+        return copy;
+    }
+
+    protected void set(int index) {
+        if (index < Long.SIZE)
+            word |= (1L << index);
+        else {
+            final int w = (index >>> 6) - 1;
+            if (w >= words.length) words = Arrays.copyOf(words, w + 1);
+            words[w] |= (1L << index);
+        }
+    }
+
+    protected void clear(int index) {
+        if (index < Long.SIZE)
+            word &= ~(1L << index);
+        else {
+            final int w = (index >>> 6) - 1;
+            if (w < words.length) words[w] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * Sets this mask to the value of other
+     * @param other another mask
+     */
+    protected void set(ComponentMask other) {
+        word = other.word;
+        if (words.length < other.words.length)
+            words = Arrays.copyOf(words, other.words.length);
+        final int n = other.words.length;
+        System.arraycopy(other.words,0,words,0,n);
+        for (int i = n; i < words.length; i++)
+            words[i] = 0L;
+    }
+
+    /**
+     * Sets every bit set in other
+     * @param other another mask
+     */
+    protected void or(ComponentMask other) {
+        word |= other.word;
+        if (words.length < other.words.length)
+            words = Arrays.copyOf(words, other.words.length);
+        for (int i = 0; i < other.words.length; i++)
+            words[i] |= other.words[i];
+    }
+
+    protected void clear() {
+        word = 0L;
+        for (int i = 0; i < words.length; i++)
+            words[i] = 0L;
+    }
+
+    /**
+     * Grows the mask to the given width. Never shrinks.
+     * @param width number of words
+     */
+    protected void ensureWidth(int width) {
+        if (width - 1 > words.length)
+            words = Arrays.copyOf(words, width - 1);
+    }
+
+    private boolean containsAllWords(ComponentMask other) {
+        final long[] o = other.words;
+        for (int i = 0; i < o.length; i++) {
+            final long w = i < words.length ? words[i] : 0L;
+            if ((w & o[i]) != o[i]) return false;
+        } return true;
+    }
+
+    private boolean intersectsWords(ComponentMask other) {
+        final int n = Math.min(words.length, other.words.length);
+        for (int i = 0; i < n; i++)
+            if ((words[i] & other.words[i]) != 0) return true;
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof ComponentMask)) return false;
+        final ComponentMask other = (ComponentMask) obj;
+        if (word != other.word) return false;
+        final int n = Math.max(words.length, other.words.length);
+        for (int i = 0; i < n; i++) {
+            final long a = i < words.length ? words[i] : 0L;
+            final long b = i < other.words.length ? other.words[i] : 0L;
+            if (a != b) return false;
+        } return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int last = words.length - 1;
+        while (last >= 0 && words[last] == 0) last--;
+        long h = word;
+        for (int i = 0; i <= last; i++)
+            h = h * 31 + words[i];
+        return Long.hashCode(h);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = words.length - 1; i >= 0; i--)
+            sb.append(Long.toBinaryString(words[i])).append(':');
+        return sb.append(Long.toBinaryString(word)).append(']').toString();
+    }
+}
@@ -18,12 +18,13 @@ public class ComponentPools {
     private final ComponentManager manager;
     private final Container<ComponentPool<? extends Component>> pools;
     private final List<ComponentType> types;
-    private long poolFlags = 0L;
+    private final ComponentMask poolFlags;
 
     protected ComponentPools(ComponentManager componentManager) {
         this.manager = componentManager;
         this.pools = new Container<>(9);
         this.types = new ArrayList<>();
+        this.poolFlags = new ComponentMask();
     }
 
 
@@ -168,10 +169,10 @@ public class ComponentPools {
 
 
     private boolean poolRegistered(ComponentType type) {
-        return (poolFlags & type.flag()) == type.flag();
+        return poolFlags.get(type.id());
     }
 
     private void occupyPoolSlot(ComponentType type) {
-        poolFlags |= type.flag();
+        poolFlags.set(type.id());
     }
 }
@@ -10,14 +10,13 @@ package com.nudge.ecs;
 public class ComponentType {
 
     private final Class<? extends Component> componentClass;
-    private final long flag;
-    private final byte id;
+    private final int id;
+    private Columns columns;
     private String name;
 
 
-    protected ComponentType(Class<? extends Component> c, long flag, byte id) {
+    protected ComponentType(Class<? extends Component> c, int id) {
         this.componentClass = c;
-        this.flag = flag;
         this.id = id;
         name = "ComponentType_" + id;
     }
@@ -30,15 +29,25 @@ public class ComponentType {
         this.name = name;
     }
 
-    public long flag() {
-        return flag;
-    }
-
     public Class<? extends Component> componentClass() {
         return componentClass;
     }
 
-    public byte id() {
+    /**
+     * @return the id of the type. Also the index of its bit in a ComponentMask
+     */
+    public int id() {
         return id;
     }
+
+    /**
+     * @return the registered Columns instance if this is a primitive column type, else null
+     */
+    public Columns columns() {
+        return columns;
+    }
+
+    protected void setColumns(Columns columns) {
+        this.columns = columns;
+    }
 }
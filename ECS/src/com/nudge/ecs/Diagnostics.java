@@ -50,7 +50,7 @@ public abstract class Diagnostics implements Runnable {
                 new Update() {
                     long tick = 0L;
                     public void step(double dt) {
-                        process(++tick,rts);
+                        process(++tick,rts.snapshot());
                     }},
                 interval);
 
@@ -76,13 +76,14 @@ public abstract class Diagnostics implements Runnable {
     protected abstract void start(LocalDateTime timeStamp) throws Exception;
 
     /**
-     * Every tick the runTime snapshot is passed in here together with the tick value.
+     * Every tick the latest published snapshot is passed in here together with the tick value.
      * Used to process that information. Typically, output.
+     * (The snapshot is the same object until the main thread publishes a new one. See RunTimeStatistics)
      *
      * @param tick the tick (number of intervals)
-     * @param snapShot the RunTimeStatistics at the given time
+     * @param snapShot the latest StatisticsSnapshot
      */
-    protected abstract void process(long tick, RunTimeStatistics snapShot);
+    protected abstract void process(long tick, StatisticsSnapshot snapShot);
 
     /**
      * Handle tidy-ups here. i.e. flushing output buffers
@@ -1,5 +1,7 @@
 package com.nudge.ecs;
 
+import com.nudge.ecs.util.containers.SparseSet;
+
 /**
  *
  * The top class of the Entity component system.
@@ -31,24 +33,80 @@ public class ECS {
     protected final ComponentManager componentManager;
     protected final SystemManager systemManager;
     protected final EntityManager entityManager;
+    protected final Scheduler scheduler;
 
     private Diagnostics diagnostics;
-    private boolean initialized;
+    private volatile boolean initialized; // read by EntityManager.stage() from other threads
 
     public ECS(int initialCap) {
         runTimeStatistics = new RunTimeStatistics(this);
         componentManager = new ComponentManager(this);
         entityManager = new EntityManager(this,initialCap);
         systemManager = new SystemManager(this);
+        scheduler = new Scheduler(this);
     }
 
     public void initialize() {
         if (!initialized) {
+            entityManager.initialize();
             systemManager.initializeSystems();
+            scheduler.build();
             initialized = true;
+            runTimeStatistics.publish();
         }
     }
 
+    /**
+     * Switches component storage to archetype chunks. (See ArchetypeStorage)
+     * Must be called before the ECS is initialized and before any components are added.
+     * Systems can then iterate their entities chunk by chunk with processChunks().
+     *
+     * @param chunkSize the number of entities per chunk
+     */
+    public void useArchetypeStorage(int chunkSize) {
+        if (initialized) throw new IllegalStateException("Enable archetype storage before ECS initialization");
+        componentManager.useArchetypeStorage(chunkSize,entityManager.initialCapacity());
+    }
+
+    /**
+     * Stores components of the class in a paged SparseSet instead of a Container.
+     * Memory then scales with the number of components, not with the highest entity id.
+     * Use for rarely used components. Must be called before any components of the class are added.
+     * Has no effect with archetype storage.
+     *
+     * @param componentClass the component class
+     * @param pageSize the number of entity ids covered by each sparse page
+     */
+    public void useSparseStorage(Class<? extends Component> componentClass, int pageSize) {
+        componentManager.useSparseStorage(componentManager.getType(componentClass),pageSize);
+    }
+
+    public void useSparseStorage(Class<? extends Component> componentClass) {
+        useSparseStorage(componentClass, SparseSet.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Tracks changes of the component class: the tick of the last change, for each entity.
+     * A component is changed when added or replaced, or when marked (Getter.getMut() / markChanged()).
+     * Systems can then process only changed entities. (See ECSystem.filterChanged())
+     *
+     * @param componentClass the component class
+     */
+    public void trackChanges(Class<? extends Component> componentClass) {
+        componentManager.trackChanges(componentManager.getType(componentClass));
+    }
+
+    /**
+     * @return the global change tick. Advanced at the start and end of every system run
+     */
+    public long changeTick() {
+        return componentManager.changeTick();
+    }
+
+    public boolean usesArchetypeStorage() {
+        return componentManager.archetypes() != null;
+    }
+
     public void capacityControl(float dt) {
         componentManager.control.check(dt);
     }
@@ -59,6 +117,48 @@ public class ECS {
         componentManager.registerPool(pool,clazz);
     }
 
+    /**
+     * Registers the primitive column component. (See Columns)
+     * The instance is the component added to entities. One instance per class.
+     * Must be called before the ECS is initialized.
+     *
+     * @param columns the columns instance
+     * @return the columns instance
+     */
+    public <T extends Columns> T registerColumns(T columns) {
+        if (initialized) throw new IllegalStateException("Register columns before ECS initialization");
+        componentManager.registerColumns(columns);
+        return columns;
+    }
+
+    public <T extends Columns> T columns(Class<T> columnsClass) {
+        return componentManager.getColumns(columnsClass);
+    }
+
+    public <T extends Columns> ColumnAccessor<T> accessor(Class<T> columnsClass) {
+        return new ColumnAccessor<>(componentManager.getColumns(columnsClass));
+    }
+
+    /**
+     * @param classes the component classes of the template
+     * @return a new template for batch creation. (See Template)
+     */
+    @SafeVarargs
+    public final Template template(Class<? extends Component>... classes) {
+        ComponentType[] types = new ComponentType[classes.length];
+        for (int i = 0; i < classes.length; i++)
+            types[i] = componentManager.getType(classes[i]);
+        return new Template(types);
+    }
+
+    /**
+     * @param initialCap the initial number of commands
+     * @return a new command buffer. (See CommandBuffer)
+     */
+    public CommandBuffer commandBuffer(int initialCap) {
+        return new CommandBuffer(this,initialCap);
+    }
+
     public <T extends ECSystem> T getSystem(Class<T> systemClass) {
         return systemManager.getSystem(systemClass);
     }
@@ -120,6 +220,13 @@ public class ECS {
         return entityManager;
     }
 
+    /**
+     * @return the scheduler. Optional. Systems can still be processed by hand. (See Scheduler)
+     */
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
 
 
     protected boolean isInitialized() {
@@ -2,7 +2,9 @@ package com.nudge.ecs;
 
 import com.nudge.ecs.util.containers.Container;
 import com.nudge.ecs.util.containers.Iterator;
-import com.nudge.ecs.util.containers.KVArray;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
@@ -23,14 +25,24 @@ import com.nudge.ecs.util.containers.KVArray;
 public abstract class ECSystem {
 
     private final ECS ecs;
-    private final KVArray<Entity> entities;
-    private final Iterator<Entity> itr = this::processEntity;
-    private final Container<Entity> waitToAdd = new Container<>();
-    private final Container<Entity> waitToRemove = new Container<>();
+    private final Iterator<Entity> itr = this::processFiltered;
     private final ComponentGroup group;
+    private EntityView view;
+    private CommandBuffer commands;
+    private ParallelProcessor parallel;
+    private final ComponentMask reads = new ComponentMask();
+    private final ComponentMask writes = new ComponentMask();
+    private boolean accessDeclared;
+    private boolean structural;
+    private ComponentType[] changeFilter;
+    private long changedSince; // the run tick of the previous run
+    private long runTick;
+    private volatile long lastNanos;
+    private volatile long totalNanos;
+    private volatile int runs;
     private boolean activated;
     private boolean processing;
-    private long systemBit;
+    private int systemID;
 
     @SafeVarargs
     public ECSystem(ECS ecs, int initialCap, Class<? extends Component>... group) {
@@ -44,11 +56,10 @@ public abstract class ECSystem {
 
     public ECSystem(ECS ecs, int initialCap, ComponentGroup group) {
         if (ecs == null) throw new IllegalArgumentException("ECS cannot be null");
-        this.entities = new KVArray<>(initialCap);
         this.group = group;
         this.ecs = ecs;
         if (ecs.isInitialized()) throw new IllegalStateException("Create system before ECS initialize");
-        ecs.systemManager.register(this);
+        ecs.systemManager.register(this,initialCap); // one system per class
     }
 
     public ECSystem(ECS ecs, ComponentGroup group) {
@@ -57,103 +68,334 @@ public abstract class ECSystem {
 
     /**
      * Called when registered in the ECS
-     * @param bit the assigned system-bit
+     * @param id the assigned system-id
+     * @param view the shared view of the system's group
      */
-    protected final void set(long bit) {
-        this.systemBit = bit;
+    protected final void set(int id, EntityView view) {
+        this.systemID = id;
+        this.view = view;
         this.activate();
     }
 
     public void process() {
         if (activated & !processing) {
+            final long start = System.nanoTime();
             clean();
+            beginRun();
             begin();
             processing = true;
-            entities.iterate(itr);
-            processing = false;
-            handleWaiting();
+            view.beginProcessing();
+            try {
+                view.entities().iterate(itr);
+            } finally {
+                processing = false;
+                handleWaiting();
+            }
             end();
+            endRun();
+            recordTime(start);
         }
     }
 
     public void process(Iterator<Entity> itr) {
         if (!processing) {
+            final long start = System.nanoTime();
             clean();
+            beginRun();
             begin();
             processing = true;
-            entities.iterate(itr);
-            processing = false;
-            handleWaiting();
+            view.beginProcessing();
+            try {
+                view.entities().iterate(itr);
+            } finally {
+                processing = false;
+                handleWaiting();
+            }
             end();
+            endRun();
+            recordTime(start);
         }
     }
 
     public void process(float dt) {
         if (activated & !processing) {
+            final long start = System.nanoTime();
+            clean();
+            beginRun();
+            begin();
+            processing = true;
+            view.beginProcessing();
+            try {
+                final EntityArray entities = view.entities();
+                for (int i = 0; i < entities.count(); i++) {
+                    final Entity e = entities.get(i);
+                    if (accepts(e)) processEntity(e,dt);
+                }
+            } finally {
+                processing = false;
+                handleWaiting();
+            }
+            end();
+            endRun();
+            recordTime(start);
+        }
+    }
+
+    /**
+     * Enables processParallel(). The entities are split into a fixed number of ranges,
+     * processed on the executor. (The calling thread takes the first range)
+     *
+     * @param executor the executor running the ranges
+     * @param ranges the number of ranges. i.e. the parallelism of the executor
+     */
+    public void setParallel(Executor executor, int ranges) {
+        if (processing) throw new IllegalStateException("System is processing");
+        parallel = new ParallelProcessor(this,ecs,executor,ranges);
+    }
+
+    /**
+     * Enables processParallel() on the common ForkJoinPool
+     */
+    public void setParallel() {
+        setParallel(ForkJoinPool.commonPool(),ForkJoinPool.getCommonPoolParallelism() + 1);
+    }
+
+    public boolean isParallel() {
+        return parallel != null;
+    }
+
+    /**
+     * Like process(), but processEntity(e) is called from multiple threads. (See setParallel())
+     * Without setParallel() it is equal to process().
+     *
+     * processEntity must then only write to the components of its own entity, and must not
+     * make structural changes through the EntityManager. Record them with commands() instead.
+     * Each range records into its own buffer. The buffers are merged in range order and played
+     * back after the pass. Under these rules, the result is the same as the serial process().
+     * If processEntity throws, no commands of the pass are played back. (Commands recorded before
+     * the pass, i.e. in begin(), stay in the buffer for the next playback) The view is released either way.
+     */
+    public void processParallel() {
+        processParallel(false,0f);
+    }
+
+    /**
+     * Like process(dt). See processParallel()
+     */
+    public void processParallel(float dt) {
+        processParallel(true,dt);
+    }
+
+    private void processParallel(boolean timed, float dt) {
+        if (parallel == null) {
+            if (timed) process(dt);
+            else process();
+            return;
+        }
+        if (activated & !processing) {
+            final long start = System.nanoTime();
             clean();
+            beginRun();
             begin();
             processing = true;
-            for (int i = 0; i < entities.count(); i++)
-                processEntity(entities.get(i),dt);
-            processing = false;
-            handleWaiting();
+            view.beginProcessing();
+            try {
+                parallel.run(view.entities(),timed,dt);
+                parallel.merge(commands());
+            } finally {
+                processing = false;
+                view.endProcessing();
+            } // on failure, the range buffers are cleared (none of the pass is merged) and the exception thrown
+            playbackCommands();
             end();
+            endRun();
+            recordTime(start);
         }
     }
 
     /**
-     * Any state-changes to an entity (add/rem-components, enable/disable)
-     * will trigger its revalidation by each registered system.
-     * Systems will appropriately keep, add or remove the entity.
+     * Called by the Scheduler, in place of process(dt). No clean and no playback of commands.
+     * The scheduler does both at its sync points. The view is held while processing, like process(dt). Those are only placed after systems declaring
+     * structuralChanges(). Recording commands without it throws an IllegalStateException.
+     * (The commands are cleared)
      *
-     * If for some reason a call to entityManager.clean() should occur while the system
-     * is processing entities, entities that should otherwise be immediately added or removed
-     * are instead put in temporary containers until the processing completes.
-     * After which they are ar handled by handleWaiting();
+     * @param dt delta time
+     * @param concurrent whether other systems run at the same time. If not, a parallel system runs parallel
+     */
+    protected final void processScheduled(float dt, boolean concurrent) {
+        if (activated & !processing) {
+            final long start = System.nanoTime();
+            beginRun();
+            begin();
+            processing = true;
+            view.beginProcessing();
+            try {
+                final EntityArray entities = view.entities();
+                if (parallel != null && !concurrent) {
+                    parallel.run(entities,true,dt);
+                    parallel.merge(commands());
+                } else {
+                    for (int i = 0; i < entities.count(); i++) {
+                        final Entity e = entities.get(i);
+                        if (accepts(e)) processEntity(e,dt);
+                    }
+                }
+            } finally {
+                processing = false;
+                view.endProcessing();
+            }
+            if (!structural && commands != null && commands.notEmpty()) {
+                commands.clear();
+                throw new IllegalStateException(getClass().getSimpleName()
+                        + " recorded commands without declaring structuralChanges()");
+            }
+            end();
+            endRun();
+            recordTime(start);
+        }
+    }
+
+    /**
+     * Declares the component types the system reads (besides its group). Used by the Scheduler.
+     * A system that declares nothing is run alone.
+     */
+    @SafeVarargs
+    protected final void reads(Class<? extends Component>... classes) {
+        for (Class<? extends Component> c : classes)
+            reads.set(ecs.getType(c).id());
+        accessDeclared = true;
+    }
+
+    /**
+     * Declares the component types the system writes to. Used by the Scheduler.
+     */
+    @SafeVarargs
+    protected final void writes(Class<? extends Component>... classes) {
+        for (Class<? extends Component> c : classes)
+            writes.set(ecs.getType(c).id());
+        accessDeclared = true;
+    }
+
+    /**
+     * Declares that the system makes structural changes (through commands()).
+     * The Scheduler plays them back and cleans before any later system runs.
+     */
+    protected final void structuralChanges() {
+        structural = true;
+    }
+
+    /**
+     * @param other another system
+     * @return whether the systems can not run at the same time
+     */
+    protected final boolean conflicts(ECSystem other) {
+        if (!accessDeclared || !other.accessDeclared) return true;
+        final ComponentMask groupReads = group.mask();
+        final ComponentMask otherGroupReads = other.group.mask();
+        return writes.intersects(other.writes)
+                || writes.intersects(other.reads) || writes.intersects(otherGroupReads)
+                || other.writes.intersects(reads) || other.writes.intersects(groupReads);
+    }
+
+    protected final boolean isStructural() {
+        return structural;
+    }
+
+    // called by the Scheduler at sync points
+    protected final void playbackCommands() {
+        if (commands != null) commands.playback();
+    }
+
+    private void recordTime(long start) {
+        final long nanos = System.nanoTime() - start;
+        lastNanos = nanos;
+        totalNanos += nanos;
+        runs++;
+    }
+
+    /**
+     * @return the duration of the last process in nanoseconds
+     */
+    public long lastProcessNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * @return the average duration of process in nanoseconds
+     */
+    public long averageProcessNanos() {
+        final int n = runs;
+        return n == 0 ? 0 : totalNanos / n;
+    }
+
+    /**
+     * Processes the system's entities chunk by chunk. Requires archetype storage.
+     * (ECS.useArchetypeStorage())
      *
-     * @param e the entity e to be revalidated by the system
-     */
-
-    // this setup should have the least possible operations. Using positive operators only :)
-    // 1.   if the entity is disabled, we only need to check if it is in the system. If it is, remove it.
-    // 2.   in the case enabled == true, we first check the status-quo to see if we can return immediately.
-    //      status-quo being: its both in the system and has the required components. OR the opposite.
-    //      That can be simplified to: inSystem == hasComponents. (No change)
-    // 3.   now we only need to know if it's in the system. if true, we know its missing the components,
-    //      and therefore we remove it. else we know it meets the requirements, and we add it.
-
-    protected final void revalidate(Entity e) {
-        final boolean inSystem = e.inSystem(systemBit);
-        if (e.isEnabled()) {
-            if (inSystem == group.containsAll(e.components())) return;
-            if (inSystem) removeEntity(e);
-            else addEntity(e);
-        } else if (inSystem) removeEntity(e);
-    }
-
-    private void addEntity(Entity e) {
-        e.addSystem(systemBit);
-        if (processing)
-            waitToAdd.push(e);
-        else {
-            entities.add(e);
-            entityAdded(e);
+     * The chunks of every archetype matching the system's group are passed to processChunk().
+     * Entities can not be moved between chunks while iterating (adding / removing component types
+     * or removing entities). Doing so throws an IllegalStateException.
+     * Replacing components and reading / writing component data is fine.
+     * If processChunk throws, the view and the storage are released, and the commands are not played back.
+     */
+    public void processChunks() {
+        if (activated & !processing) {
+            final ArchetypeStorage storage = ecs.componentManager.archetypes();
+            if (storage == null) throw new IllegalStateException("Archetype storage not enabled");
+            final long start = System.nanoTime();
+            clean();
+            beginRun();
+            begin();
+            processing = true;
+            view.beginProcessing();
+            storage.beginIteration();
+            try {
+                final Container<Archetype> archetypes = view.archetypes();
+                for (int i = 0; i < archetypes.count(); i++) {
+                    final Archetype archetype = archetypes.get(i);
+                    if (archetype.isEmpty()) continue;
+                    final int chunkCount = archetype.chunkCount();
+                    for (int j = 0; j < chunkCount; j++)
+                        processChunk(archetype.chunk(j));
+                }
+            } finally {
+                storage.endIteration();
+                processing = false;
+                view.endProcessing();
+            }
+            playbackCommands();
+            end();
+            endRun();
+            recordTime(start);
         }
     }
 
-    private void removeEntity(Entity e) {
-        e.removeSystem(systemBit);
-        if (processing)
-            waitToRemove.push(e);
-        else {
-            entities.remove(e);
-            entityRemoved(e);
+    /**
+     * Override to work directly on the component columns of the chunk. (Chunk.components(type))
+     * By default, every enabled entity of the chunk is passed to processEntity(e).
+     *
+     * @param chunk a chunk of an archetype matching the group of the system
+     */
+    protected void processChunk(Chunk chunk) {
+        final int count = chunk.count();
+        for (int i = 0; i < count; i++) {
+            final Entity e = chunk.entity(i);
+            if (e.isEnabled() && accepts(e)) processEntity(e);
         }
     }
 
     protected void processEntity(Entity e) {}
 
-    protected void processEntity(Entity e, float dt) {}
+    private void processFiltered(Entity e) {
+        if (accepts(e)) processEntity(e);
+    }
+
+    /**
+     * By default, passes the entity to processEntity(e)
+     */
+    protected void processEntity(Entity e, float dt) {
+        processEntity(e);
+    }
 
     protected void entityAdded(Entity e) {}
 
@@ -161,9 +403,7 @@ public abstract class ECSystem {
 
     protected void initialize() {}
 
-    protected void terminate() {
-        // todo: free the KVArrays
-    }
+    protected void terminate() {}
 
     protected void begin() {}
 
@@ -183,33 +423,100 @@ public abstract class ECSystem {
      * Handles any entities tried to be added / removed during processing.
      * That in itself should not really happen if done from the same thread as the system.
      * Since any calls to entityManager.clean() happens before every ECSystem entity processing.
-     * But if it should happen, the entities are put in "waiting queues" that are handled
-     * straight after processing (this method). The entities are also checked to see if no
-     * state-change has happened during the time in waiting. I doubt this would happen.
-     * But it theoretically could. Perhaps it was added or removed again while waiting.
-     * Either way, its state is double-checked and handled appropriately.
+     * But if it should happen, the entities are put in "waiting queues" of the system's EntityView.
+     * They are handled when the last system processing the view is done.
+     * The entities are also checked to see if no state-change has happened during the time in waiting.
      */
 
     protected void handleWaiting() {
+        view.endProcessing();
+        if (commands != null) commands.playback();
+    }
 
-        while (waitToAdd.notEmpty()) {
-            Entity e = waitToAdd.pop();
-            if (e.inSystem(systemBit)) {
-                entities.add(e);
-                entityAdded(e);
-            }
+    /**
+     * Structural changes recorded here while processing are played back
+     * straight after the system is done. (In handleWaiting())
+     * In processParallel(), the buffer of the range processed by the calling thread.
+     *
+     * @return the command buffer of the system
+     */
+    protected final CommandBuffer commands() {
+        if (parallel != null) {
+            final CommandBuffer range = parallel.commands();
+            if (range != null) return range;
         }
-        while (waitToRemove.notEmpty()) {
-            Entity e = waitToRemove.pop();
-            if (!e.inSystem(systemBit)) {
-                entities.remove(e);
-                entityRemoved(e);
-            }
+        if (commands == null) commands = new CommandBuffer(ecs,64);
+        return commands;
+    }
+
+    /**
+     * Processes only the entities where any of the component types changed since the last run
+     * of the system. (Added, replaced, or marked through a Getter. See Getter.getMut())
+     * The changes of the system itself are not seen by its next run, unless other systems run concurrently.
+     * Starts tracking changes of the types. On the first run, every entity with a tracked change is processed.
+     * Applies to every process method, except process(Iterator).
+     */
+    @SafeVarargs
+    protected final void filterChanged(Class<? extends Component>... classes) {
+        if (processing) throw new IllegalStateException("System is processing");
+        if (classes.length == 0) {
+            changeFilter = null;
+            return;
         }
+        final ComponentType[] types = new ComponentType[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            types[i] = ecs.getType(classes[i]);
+            ecs.componentManager.trackChanges(types[i]);
+        } changeFilter = types;
+    }
+
+    /**
+     * @return whether any of the filtered component types of the entity changed since the last run.
+     * True without a filter. (See filterChanged())
+     */
+    protected final boolean accepts(Entity e) {
+        final ComponentType[] types = changeFilter;
+        if (types == null) return true;
+        for (ComponentType t : types)
+            if (changed(e,t)) return true;
+        return false;
+    }
+
+    /**
+     * @return whether the entity's component of the type changed since the last run of the system.
+     * Only for types that track changes. (See ECS.trackChanges())
+     */
+    protected final boolean changed(Entity e, ComponentType t) {
+        return ecs.componentManager.changedTick(e.id(),t.id()) > changedSince;
+    }
+
+    /**
+     * @return the change tick at the start of the previous run. Changes after it have a greater tick
+     */
+    protected final long changedSince() {
+        return changedSince;
+    }
+
+    // Changes made during this run get the run tick. The next run sees changes with a greater tick only
+    private void beginRun() {
+        changedSince = runTick;
+        runTick = ecs.componentManager.advanceChangeTick();
+    }
+
+    // Changes made after this run (by other systems or between frames) get a greater tick than the run tick
+    private void endRun() {
+        ecs.componentManager.advanceChangeTick();
+    }
+
+    protected EntityArray getEntities() {
+        return view.entities();
     }
 
-    protected KVArray<Entity> getEntities() {
-        return entities;
+    /**
+     * @return the entity view of the system. Shared with every system of the same group
+     */
+    public EntityView getView() {
+        return view;
     }
 
     public void activate() {
@@ -228,8 +535,18 @@ public abstract class ECSystem {
         return processing;
     }
 
-    public long getSystemBit() {
-        return systemBit;
+    public int getSystemID() {
+        return systemID;
+    }
+
+    /**
+     * Membership is tracked by the system's EntityView. O(1)
+     *
+     * @param e the entity
+     * @return whether the entity is a member of the system (or waiting to be added)
+     */
+    public final boolean contains(Entity e) {
+        return view.contains(e);
     }
 
     public ComponentGroup getGroup() {
@@ -1,113 +1,112 @@
 package com.nudge.ecs;
 
-
-import com.nudge.ecs.util.containers.KVShared;
-
 /**
  * @author Frederik Dahl
  * 21/08/2021
  *
+ * The enabled and dirty state, and the generation of the entity, are kept in primitive arrays
+ * of the EntityManager. (indexed by id) See EntityManager.handle(e) for the long-handle API.
  */
 
 
-public class Entity extends KVShared {
+public class Entity {
 
     private final int id;
-    private long systems;
-    private long components;
-    private boolean enabled;
-    private boolean dirty;
+    private final EntityManager manager;
+    private final ComponentMask components;
+    private final ComponentMask changed;
+    private int systems;
 
-    protected Entity( int id) {
+    protected Entity(int id, int maskWidth, EntityManager manager) {
         this.id = id;
+        this.manager = manager;
+        this.components = new ComponentMask(maskWidth);
+        this.changed = new ComponentMask(maskWidth);
         reset();
     }
 
     public void reset() {
-        enabled = true;
-        dirty = false;
-        systems = 0L;
-        components = 0L;
+        manager.resetState(id);
+        systems = 0;
+        components.clear();
+        changed.clear();
     }
 
     public int id() {
         return id;
     }
 
-    public boolean isDirty() {
-        return dirty;
-    }
-
-    protected void markAsDirty() {
-        dirty = true;
+    /**
+     * @return the current handle of the entity. Goes stale when the entity is deleted
+     */
+    public long handle() {
+        return manager.handle(this);
     }
 
-    protected void markAsClean() {
-        dirty = false;
+    public boolean isDirty() {
+        return manager.isDirty(id);
     }
 
     public boolean isEnabled() {
-        return enabled;
-    }
-
-    protected void disable() {
-        enabled = false;
-    }
-
-    protected void enable() {
-        enabled = true;
+        return manager.isEnabled(id);
     }
 
-    public long systemCount() {
-        return Long.bitCount(systems);
+    /**
+     * @return the number of systems the entity is currently a member of
+     */
+    public int systemCount() {
+        return systems;
     }
 
     public long componentCount() {
-        return Long.bitCount(components);
+        return components.cardinality();
     }
 
-    public long systems() {
-        return systems;
-    }
-
-    public long components() {
+    /**
+     * @return the component flags of the entity. (Do not hold on to it, it changes with the entity)
+     */
+    public ComponentMask components() {
         return components;
     }
 
-    protected boolean inSystem(long bit) {
-        return (systems & bit) == bit;
-    }
+    // membership itself is tracked by the systems (ECSystem.contains())
 
-    protected void addSystem(long bit) {
-        systems |= bit;
+    protected void onSystemAdded() {
+        systems++;
     }
 
-    protected void setSystems(long bits) {
-        systems = bits;
-    }
-
-    protected void removeSystem(long bit) {
-        systems &= ~bit;
+    protected void onSystemRemoved() {
+        systems--;
     }
 
     protected boolean hasAnyComponent() {
-        return components > 0;
+        return components.notEmpty();
     }
 
-    protected boolean hasComponent(long bit) {
-        return (components & bit) == bit;
+    protected boolean hasComponent(ComponentType type) {
+        return components.get(type.id());
     }
     
-    protected void addComponent(long bit) {
-        components |= bit;
+    protected void addComponent(ComponentType type) {
+        components.set(type.id());
+        changed.set(type.id());
     }
 
-    protected void setComponents(long bits) {
-        components = bits;
+    protected void clearComponents() {
+        changed.or(components);
+        components.clear();
     }
     
-    protected void removeComponent(long bit) {
-        components &= ~bit;
+    protected void removeComponent(ComponentType type) {
+        components.clear(type.id());
+        changed.set(type.id());
+    }
+
+    /**
+     * @return the types added or removed since the entity was last cleaned
+     */
+    protected ComponentMask changed() {
+        return changed;
     }
 
     @Override
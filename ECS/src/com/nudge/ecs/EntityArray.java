@@ -0,0 +1,185 @@
+package com.nudge.ecs;
+
+import com.nudge.ecs.util.containers.ECSArray;
+import com.nudge.ecs.util.containers.Iterator;
+import com.nudge.ecs.util.exceptions.EmptyCollectionException;
+import com.nudge.ecs.util.exceptions.ItemNotFoundException;
+
+import java.util.Arrays;
+
+/**
+ *
+ * The entity list of a system. A tightly stacked, auto-resizable array like the KVArray,
+ * with the same swap-remove semantics: removing an item moves the last item into its slot.
+ *
+ * Instead of every entity keeping a key per array it inhabits (KVShared), the array owns
+ * an int[] from entity id to dense index. add(), remove() and contains() are O(1) regardless
+ * of how many systems the entity is in, and the entities carry no per-array state.
+ * The index is stored +1, so 0 means "not in the array" and no filling is needed.
+ *
+ * The sparse index grows to the highest entity id added. It does not shrink.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class EntityArray implements ECSArray<Entity> {
+
+    private static final Entity[] EMPTY = new Entity[0];
+
+    private Entity[] items;
+    private int[] sparse;
+    private int count;
+    private int targetCap;
+
+    public EntityArray(int initialCap) {
+        targetCap = Math.max(1,initialCap);
+        items = new Entity[targetCap];
+        sparse = new int[targetCap];
+    }
+
+    public EntityArray() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public void iterate(Iterator<Entity> itr) {
+        for (int i = 0; i < count; i++)
+            itr.next(items[i]);
+    }
+
+    /**
+     * Adds the entity if not already present
+     * @param e the entity
+     */
+    public void add(Entity e) {
+        final int id = e.id();
+        if (id >= sparse.length)
+            sparse = Arrays.copyOf(sparse,growFormula(id));
+        else if (sparse[id] != 0) return;
+        if (count == items.length) resize(growFormula(count));
+        items[count] = e;
+        sparse[id] = ++count;
+    }
+
+    public void remove(Entity e) {
+        if (count == 0) throw new EmptyCollectionException("Empty array");
+        final int index = getIndex(e);
+        if (index < 0) throw new ItemNotFoundException("Entity not in array");
+        removeIndex(index);
+    }
+
+    /**
+     * @param index the dense index
+     * @return the removed entity
+     */
+    public Entity remove(int index) {
+        final Entity e = items[index];
+        removeIndex(index);
+        return e;
+    }
+
+    public Entity get(int index) {
+        return items[index];
+    }
+
+    /**
+     * @param e the entity
+     * @return the dense index of the entity, or -1 if not in the array
+     */
+    public int getIndex(Entity e) {
+        final int id = e.id();
+        return id < sparse.length ? sparse[id] - 1 : -1;
+    }
+
+    public boolean contains(Entity e) {
+        if (e == null) return false;
+        final int id = e.id();
+        return id < sparse.length && sparse[id] != 0;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            sparse[items[i].id()] = 0;
+            items[i] = null;
+        } count = 0;
+    }
+
+    /**
+     * Clears the array and releases the backing arrays.
+     */
+    public void free() {
+        clear();
+        items = EMPTY;
+        sparse = new int[0];
+    }
+
+    @Override
+    public void ensureCapacity(int n) {
+        int size = n + count;
+        if (size > items.length)
+            resize(size);
+    }
+
+    @Override
+    public boolean fit(boolean absolute) {
+        if (count == capacity()) return false;
+        int size = absolute ? Math.max(count,1) : Math.max(count, targetCap);
+        if (size == capacity()) return false;
+        resize(size);
+        return true;
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public float loadFactor() {
+        return (float) count / items.length;
+    }
+
+    @Override
+    public int capacity() {
+        return items.length;
+    }
+
+    @Override
+    public int targetCapacity() {
+        return targetCap;
+    }
+
+    @Override
+    public void setTargetCapacity(int cap) {
+        targetCap = Math.max(cap,1);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public boolean notEmpty() {
+        return count > 0;
+    }
+
+    private void removeIndex(int index) {
+        final int last = --count;
+        sparse[items[index].id()] = 0;
+        if (index != last) {
+            final Entity moved = items[last];
+            items[index] = moved;
+            sparse[moved.id()] = index + 1;
+        } items[last] = null;
+        if (count == 0 && targetCap < items.length)
+            items = new Entity[targetCap];
+    }
+
+    private void resize(int size) {
+        items = Arrays.copyOf(items,Math.max(size,1));
+    }
+}
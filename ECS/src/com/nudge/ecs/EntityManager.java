@@ -2,30 +2,64 @@ package com.nudge.ecs;
 
 
 import com.nudge.ecs.util.containers.Container;
+import com.nudge.ecs.util.containers.MPSCQueue;
+
+import java.util.Arrays;
 
 /**
  * @author Frederik Dahl
  * 22/08/2021
+ *
+ * Entities can also be referenced by long handles. A handle packs the entity id (low 32 bits)
+ * and the generation of the id (high 32 bits). The generation is incremented when the entity
+ * is deleted, so handles kept after that are detected as stale by a single array read.
+ * The per-entity flags (enabled, dirty, alive) and generations are primitive arrays indexed by id.
  */
 
 
 public class EntityManager {
 
+    public static final long NULL_HANDLE = -1L;
+
+    private static final byte ENABLED = 0x01;
+    private static final byte DIRTY = 0x02;
+    private static final byte ALIVE = 0x04;
+    private static final byte TOGGLED = 0x08;
+
+    private byte[] states;
+    private int[] generations;
+    private int cleanStamp;
+    private long deleted; // total number of entities deleted
+
+    private final MPSCQueue<Staged> staged = new MPSCQueue<>();
     private final Container<Entity> entities;
     private final Container<Entity> dirty;
     private final EntityPool pool;
+    private final int initialCap;
     private final ECS ecs;
 
 
     protected EntityManager(ECS ecs, int initialCap) {
         entities = new Container<>(initialCap);
         dirty = new Container<>(initialCap);
-        pool = new EntityPool(initialCap);
-        pool.fill(initialCap);
+        states = new byte[Math.max(initialCap,1)];
+        generations = new int[states.length];
+        pool = new EntityPool(this,initialCap);
+        this.initialCap = initialCap;
         this.ecs = ecs;
     }
 
+    /**
+     * Called on ECS initialization. All types are registered at this point,
+     * so the pool is filled with entities of the final ComponentMask width.
+     */
+    protected void initialize() {
+        pool.setMaskWidth(ecs.componentManager.typeManager.maskWidth());
+        pool.fill(initialCap);
+    }
+
     protected void terminate() {
+        if (staged.notEmpty()) mergeStaged();
         entities.iterate(this::remove);
         clean();
         if (entities.notEmpty() || dirty.notEmpty())
@@ -36,9 +70,188 @@ public class EntityManager {
     public Entity create() {
         Entity e = pool.obtain();
         entities.set(e,e.id());
+        states[e.id()] |= ALIVE;
         return e;
     }
 
+    /**
+     * Thread safe. For creating entities from other threads (i.e. asset loading).
+     * The entity is staged with its components, and merged into the world on the next clean().
+     * The returned handle is valid (isAlive) from then on. Requires the ECS to be initialized.
+     *
+     * @param components the components of the entity. Of registered types
+     * @return the handle of the entity to be merged
+     */
+    public long stage(Component... components) {
+        if (!ecs.isInitialized()) throw new IllegalStateException("ECS not initialized");
+        if (components.length == 0) throw new IllegalArgumentException("No components");
+        for (Component c : components) {
+            if (c == null) throw new IllegalArgumentException("null Component");
+            ecs.componentManager.getType(c.getClass()); // throws on unregistered types
+        }
+        final int id = pool.reserveID();
+        staged.push(new Staged(id,components.clone()));
+        return id & 0xFFFF_FFFFL; // generation 0
+    }
+
+    // main thread, at the beginning of clean()
+    private void mergeStaged() {
+        Staged s;
+        while ((s = staged.poll()) != null) {
+            final Entity e = pool.obtainReserved(s.id);
+            entities.set(e,s.id);
+            states[s.id] |= ALIVE;
+            for (Component c : s.components)
+                ecs.componentManager.addComponent(e,c);
+            refresh(e);
+        }
+    }
+
+    private static final class Staged {
+        final int id;
+        final Component[] components;
+
+        Staged(int id, Component[] components) {
+            this.id = id;
+            this.components = components;
+        }
+    }
+
+    /**
+     * Creates n entities with the components of the template.
+     * The initializer fills the components of each entity (See Template).
+     * The entities are put directly into the matching systems. No dirty-marking or revalidation.
+     * Do not call from inside ECSystem.processChunks().
+     *
+     * @param template the template
+     * @param n the number of entities
+     * @param initializer fills the components of each entity
+     */
+    public void createBatch(Template template, int n, Template.Initializer initializer) {
+        if (!ecs.isInitialized()) throw new IllegalStateException("ECS not initialized");
+        if (n <= 0) return;
+        final ComponentManager componentManager = ecs.componentManager;
+        final EntityView[] views = template.views(ecs.systemManager);
+        final Component[] components = template.components();
+        final int bound = pool.idBound(n);
+        ensureIds(bound);
+        componentManager.beginBatch(template,n,bound);
+        entities.ensureCapacity(n,bound);
+        for (int i = 0; i < n; i++) {
+            final Entity e = create();
+            try {
+                initializer.initialize(e,i,components);
+                componentManager.addBatch(e,template);
+            } catch (RuntimeException ex) {
+                Arrays.fill(components,null);
+                refresh(e); // deleted on clean
+                throw ex;
+            } Arrays.fill(components,null);
+            e.changed().clear();
+            for (EntityView view : views)
+                view.insert(e);
+        }
+    }
+
+    /**
+     * @return the handle of a new entity
+     */
+    public long createHandle() {
+        return handle(create());
+    }
+
+    public long handle(Entity e) {
+        final int id = e.id();
+        return ((long) generations[id] << 32) | (id & 0xFFFF_FFFFL);
+    }
+
+    public static int id(long handle) {
+        return (int) handle;
+    }
+
+    public static int generation(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    /**
+     * @param handle an entity handle
+     * @return true if the entity of the handle has not been deleted
+     */
+    public boolean isAlive(long handle) {
+        final int id = (int) handle;
+        return id >= 0 && id < generations.length
+                && generations[id] == (int) (handle >>> 32)
+                && (states[id] & ALIVE) != 0;
+    }
+
+    /**
+     * @param handle an entity handle
+     * @return the entity, or null if the handle is stale
+     */
+    public Entity get(long handle) {
+        return isAlive(handle) ? entities.get((int) handle) : null;
+    }
+
+    /**
+     * @return false if the handle is stale
+     */
+    public boolean remove(long handle) {
+        final Entity e = get(handle);
+        if (e == null) return false;
+        remove(e);
+        return true;
+    }
+
+    /**
+     * @return false if the handle is stale
+     */
+    public boolean addComponent(long handle, Component c) {
+        final Entity e = get(handle);
+        if (e == null) return false;
+        addComponent(e,c);
+        return true;
+    }
+
+    /**
+     * @return false if the handle is stale
+     */
+    public boolean addComponents(long handle, Component... components) {
+        final Entity e = get(handle);
+        if (e == null) return false;
+        addComponents(e,components);
+        return true;
+    }
+
+    /**
+     * @return false if the handle is stale
+     */
+    public boolean removeComponent(long handle, ComponentType t) {
+        final Entity e = get(handle);
+        if (e == null) return false;
+        removeComponent(e,t);
+        return true;
+    }
+
+    /**
+     * @return false if the handle is stale
+     */
+    public boolean disable(long handle) {
+        final Entity e = get(handle);
+        if (e == null) return false;
+        disable(e);
+        return true;
+    }
+
+    /**
+     * @return false if the handle is stale
+     */
+    public boolean enable(long handle) {
+        final Entity e = get(handle);
+        if (e == null) return false;
+        enable(e);
+        return true;
+    }
+
 
     /**
      * Used to delete entities (return entities to pool).
@@ -82,13 +295,17 @@ public class EntityManager {
     }
 
     public void disable(Entity e) {
-        if (e.isEnabled()) refresh(e);
-        e.disable();
+        if (isEnabled(e.id())) {
+            refresh(e);
+            states[e.id()] ^= TOGGLED;
+        } states[e.id()] &= ~ENABLED;
     }
 
     public void enable(Entity e) {
-        if (!e.isEnabled()) refresh(e);
-        e.enable();
+        if (!isEnabled(e.id())) {
+            refresh(e);
+            states[e.id()] ^= TOGGLED;
+        } states[e.id()] |= ENABLED;
     }
 
     /**
@@ -99,9 +316,45 @@ public class EntityManager {
      * @param e the entity to refresh
      */
     private void refresh(Entity e) {
-        if (e.isDirty()) return;
+        final int id = e.id();
+        if ((states[id] & DIRTY) != 0) return;
         dirty.push(e);
-        e.markAsDirty();
+        states[id] |= DIRTY;
+    }
+
+    protected boolean isEnabled(int entityID) {
+        return (states[entityID] & ENABLED) != 0;
+    }
+
+    protected boolean isDirty(int entityID) {
+        return (states[entityID] & DIRTY) != 0;
+    }
+
+    // Called on new and pooled entities
+    protected void resetState(int entityID) {
+        if (entityID >= states.length)
+            ensureIds(((entityID + 1) * 3) / 2 + 1);
+        states[entityID] = ENABLED;
+    }
+
+    // grows the per-id arrays to cover ids below size
+    private void ensureIds(int size) {
+        if (size > states.length) {
+            states = Arrays.copyOf(states,size);
+            generations = Arrays.copyOf(generations,size);
+            ecs.componentManager.ensureChangeTicks(size);
+        }
+    }
+
+    /**
+     * @return the number of entity ids covered by the per-id arrays. Every id in use is below it
+     */
+    protected int idCapacity() {
+        return states.length;
+    }
+
+    protected int initialCapacity() {
+        return initialCap;
     }
 
     public int entities() {
@@ -112,10 +365,20 @@ public class EntityManager {
         return pool.obtained();
     }
 
+    /**
+     * @return the number of entities discarded by the pool. (Not returned to it) See entitiesDeleted()
+     */
     public int entitiesDestroyed() {
         return pool.discarded();
     }
 
+    /**
+     * @return the total number of entities deleted. (Removed, or left without components)
+     */
+    public long entitiesDeleted() {
+        return deleted;
+    }
+
     public int entitiesInMemory() {
         return pool.objectsInMemory();
     }
@@ -124,21 +387,29 @@ public class EntityManager {
      * "Cleans" entities marked as dirty.
      * (Adding/removing components to/from an entity marks it as dirty)
      * This gets called at the beginning of each EntitySystems' process-loop.
-     * Any dirty entities will get revalidated by each EntitySystem registered by the ECS.
+     * Any dirty entities will get revalidated once by each EntityView (one per group of the registered systems)
+     * whose group contains a component type added or removed since the last clean.
+     * Enabling / disabling an entity revalidates it by every view.
      *
      * Note: Entities marked as dirty without components, will be deleted after clean.
      * Deleting an entity is equivalent of removing all it's components and vice-versa.
      */
     protected void clean() {
+        if (staged.notEmpty()) mergeStaged();
         if (dirty.notEmpty()) {
-            final Container<ECSystem> systems = ecs.systemManager.systems;
-            final int systemCount = systems.count();
+            final SystemManager systemManager = ecs.systemManager;
+            final Container<EntityView> views = systemManager.views;
+            final int viewCount = views.count();
             final int dirtyCount = dirty.count();
             for (int i = 0; i < dirtyCount; i++) {
                 Entity e = dirty.get(i);
-                for (int j = 0; j < systemCount; j++)
-                    systems.get(j).revalidate(e);
-                e.markAsClean();
+                final int id = e.id();
+                if ((states[id] & TOGGLED) != 0) {
+                    for (int j = 0; j < viewCount; j++)
+                        views.get(j).revalidate(e);
+                } else revalidateChanged(e,systemManager);
+                e.changed().clear();
+                states[id] &= ~(DIRTY | TOGGLED);
                 if (!e.hasAnyComponent()) {
                     delete(e);
                 }
@@ -147,8 +418,33 @@ public class EntityManager {
         }
     }
 
+    /**
+     * Only the views with a changed type in their group can change membership.
+     * (Plus the views of the empty group, interested in every entity)
+     * A view sharing more than one changed type is visited once.
+     */
+    private void revalidateChanged(Entity e, SystemManager systemManager) {
+        final int stamp = ++cleanStamp;
+        final ComponentMask changed = e.changed();
+        for (int t = changed.nextSetBit(0); t >= 0; t = changed.nextSetBit(t + 1)) {
+            final EntityView[] interested = systemManager.viewsOf(t);
+            for (EntityView view : interested) {
+                if (view.stamp != stamp) {
+                    view.stamp = stamp;
+                    view.revalidate(e);
+                }
+            }
+        }
+        final EntityView[] all = systemManager.viewsOfAll();
+        for (EntityView view : all) view.revalidate(e);
+    }
+
     private void delete(Entity e) {
-        entities.remove(e.id());
+        final int id = e.id();
+        entities.remove(id);
+        generations[id]++;
+        states[id] = 0;
+        deleted++;
         pool.free(e);
     }
 
@@ -5,6 +5,8 @@ import com.nudge.ecs.util.IntQueue;
 import com.nudge.ecs.util.IntStack;
 import com.nudge.ecs.util.containers.Pool;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  *
  * The Entity pool supplies the ECS with reusable entities.
@@ -17,10 +19,13 @@ import com.nudge.ecs.util.containers.Pool;
 public class EntityPool extends Pool<Entity> {
 
     private final IntQueue freeIDs = new IntQueue();
-    private int genID = 0;
+    private final EntityManager manager;
+    private int maskWidth = 1;
+    private final AtomicInteger genID = new AtomicInteger();
 
-    protected EntityPool(int initialCapacity) {
+    protected EntityPool(EntityManager manager, int initialCapacity) {
         super(initialCapacity, Short.MAX_VALUE);
+        this.manager = manager;
     }
 
     @Override
@@ -35,7 +40,42 @@ public class EntityPool extends Pool<Entity> {
 
     @Override
     protected Entity newObject() {
-        int id = freeIDs.isEmpty() ? genID++ : freeIDs.dequeue();
-        return new Entity(id);
+        int id = freeIDs.isEmpty() ? genID.getAndIncrement() : freeIDs.dequeue();
+        return new Entity(id,maskWidth,manager);
+    }
+
+    /**
+     * Main thread. Pooled entities and free ids are used before new ids.
+     * @param n the number of entities to be obtained
+     * @return an upper bound (exclusive) of the ids of the next n entities obtained
+     */
+    protected int idBound(int n) {
+        final int recycled = size() + freeIDs.size();
+        return genID.get() + Math.max(0,n - recycled);
+    }
+
+    /**
+     * Thread safe. Reserves an id never used before. (Recycled ids are not thread safe)
+     * @return a new id
+     */
+    protected int reserveID() {
+        return genID.getAndIncrement();
+    }
+
+    /**
+     * Main thread. A new entity for an id reserved with reserveID()
+     */
+    protected Entity obtainReserved(int id) {
+        newInstances++;
+        obtained++;
+        return new Entity(id,maskWidth,manager);
+    }
+
+    /**
+     * Set on ECS initialization. Entities created after this get ComponentMasks of this width.
+     * @param width number of 64-bit words
+     */
+    protected void setMaskWidth(int width) {
+        maskWidth = width;
     }
 }
@@ -0,0 +1,192 @@
+package com.nudge.ecs;
+
+import com.nudge.ecs.util.containers.Container;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * The entities matching a ComponentGroup. Shared by every system of that group.
+ *
+ * Groups are deduplicated by mask (TypeManager.getGroup), so systems requiring the same components
+ * get the same view. Dirty entities are revalidated once per view instead of once per system,
+ * and the entity list and membership bitset exist once per group.
+ * Membership changes are passed on to each system of the view (entityAdded / entityRemoved).
+ *
+ * While any system of the view is processing, changes are put in waiting containers,
+ * and handled when the last processing system of the view is done.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class EntityView {
+
+    private final ComponentGroup group;
+    private final EntityArray entities;
+    private final Container<ECSystem> systems = new Container<>(4);
+    private final Container<Entity> waitToAdd = new Container<>();
+    private final Container<Entity> waitToRemove = new Container<>();
+    private final Container<Archetype> archetypes = new Container<>();
+    private long[] members;
+    private final AtomicInteger processing = new AtomicInteger(); // systems of a Scheduler stage may share the view
+    protected int stamp;
+
+    protected EntityView(ComponentGroup group, int initialCap) {
+        this.group = group;
+        this.entities = new EntityArray(initialCap);
+        this.members = new long[Math.max(1,(initialCap + Long.SIZE - 1) / Long.SIZE)];
+    }
+
+    /**
+     * Any state-changes to an entity (add/rem-components, enable/disable)
+     * will trigger its revalidation by each view.
+     * Views will appropriately keep, add or remove the entity.
+     *
+     * If for some reason a call to entityManager.clean() should occur while a system of the view
+     * is processing entities, entities that should otherwise be immediately added or removed
+     * are instead put in temporary containers until the processing completes.
+     *
+     * @param e the entity e to be revalidated by the view
+     */
+
+    // this setup should have the least possible operations. Using positive operators only :)
+    // 1.   if the entity is disabled, we only need to check if it is in the view. If it is, remove it.
+    // 2.   in the case enabled == true, we first check the status-quo to see if we can return immediately.
+    //      status-quo being: its both in the view and has the required components. OR the opposite.
+    //      That can be simplified to: inView == hasComponents. (No change)
+    // 3.   now we only need to know if it's in the view. if true, we know its missing the components,
+    //      and therefore we remove it. else we know it meets the requirements, and we add it.
+
+    protected final void revalidate(Entity e) {
+        final boolean inView = contains(e);
+        if (e.isEnabled()) {
+            if (inView == group.containsAll(e.components())) return;
+            if (inView) removeEntity(e);
+            else addEntity(e);
+        } else if (inView) removeEntity(e);
+    }
+
+    // new entity of a Template batch, known to match the group
+    protected void insert(Entity e) {
+        addEntity(e);
+    }
+
+    private void addEntity(Entity e) {
+        setMember(e.id());
+        if (processing.get() > 0)
+            waitToAdd.push(e);
+        else {
+            entities.add(e);
+            notifyAdded(e);
+        }
+    }
+
+    private void removeEntity(Entity e) {
+        clearMember(e.id());
+        if (processing.get() > 0)
+            waitToRemove.push(e);
+        else {
+            entities.remove(e);
+            notifyRemoved(e);
+        }
+    }
+
+    private void notifyAdded(Entity e) {
+        for (int i = 0; i < systems.count(); i++) {
+            e.onSystemAdded();
+            systems.get(i).entityAdded(e);
+        }
+    }
+
+    private void notifyRemoved(Entity e) {
+        for (int i = 0; i < systems.count(); i++) {
+            e.onSystemRemoved();
+            systems.get(i).entityRemoved(e);
+        }
+    }
+
+    protected void beginProcessing() {
+        processing.incrementAndGet();
+    }
+
+    /**
+     * Handles the waiting entities when the last processing system of the view is done.
+     * The entities are checked for any state-change while waiting.
+     */
+    protected void endProcessing() {
+        if (processing.decrementAndGet() > 0) return;
+        while (waitToAdd.notEmpty()) {
+            Entity e = waitToAdd.pop();
+            if (contains(e) && !entities.contains(e)) {
+                entities.add(e);
+                notifyAdded(e);
+            }
+        }
+        while (waitToRemove.notEmpty()) {
+            Entity e = waitToRemove.pop();
+            if (!contains(e) && entities.contains(e)) {
+                entities.remove(e);
+                notifyRemoved(e);
+            }
+        }
+    }
+
+    // callback from SystemManager
+    protected void archetypeCreated(Archetype archetype) {
+        if (group.containsAll(archetype.mask()))
+            archetypes.push(archetype);
+    }
+
+    protected void addSystem(ECSystem system) {
+        systems.push(system);
+    }
+
+    protected Container<Archetype> archetypes() {
+        return archetypes;
+    }
+
+    protected EntityArray entities() {
+        return entities;
+    }
+
+    public ComponentGroup group() {
+        return group;
+    }
+
+    public int systemCount() {
+        return systems.count();
+    }
+
+    public int size() {
+        return entities.count();
+    }
+
+    public boolean isProcessing() {
+        return processing.get() > 0;
+    }
+
+    /**
+     * @param e the entity
+     * @return whether the entity is a member of the view (or waiting to be added)
+     */
+    public final boolean contains(Entity e) {
+        final int word = e.id() >>> 6;
+        return word < members.length && (members[word] & (1L << e.id())) != 0;
+    }
+
+    private void setMember(int entityID) {
+        final int word = entityID >>> 6;
+        if (word >= members.length) {
+            long[] tmp = members;
+            members = new long[((word + 1) * 3) / 2 + 1];
+            System.arraycopy(tmp,0,members,0,tmp.length);
+        }
+        members[word] |= (1L << entityID);
+    }
+
+    private void clearMember(int entityID) {
+        members[entityID >>> 6] &= ~(1L << entityID);
+    }
+}
@@ -1,5 +1,7 @@
 package com.nudge.ecs;
 
+import com.nudge.ecs.util.containers.Iterator;
+
 /**
  * A" component getter" helper class for fast queries of ECS component containers.
  * You can create them in the ESC class
@@ -12,9 +14,10 @@ package com.nudge.ecs;
 
 public class Getter<T extends Component>{
 
-    private final byte typeID;
+    private final int typeID;
     private final Class<T> clazz;
     private final ComponentManager componentManager;
+    private final EntityManager entityManager;
 
     /**
      * Available through the ECS instance getter(class); method
@@ -24,6 +27,7 @@ public class Getter<T extends Component>{
     protected Getter(Class<T> clazz, ComponentManager componentManager) {
         this.typeID = componentManager.getType(clazz).id();
         this.componentManager = componentManager;
+        this.entityManager = componentManager.ecs.entityManager;
         this.clazz = clazz;
     }
     /**
@@ -36,6 +40,36 @@ public class Getter<T extends Component>{
     public final T getUnsafe(Entity e) {
         return (T)componentManager.getComponentUnsafe(e.id(),typeID);
     }
+    /**
+     * Like getUnsafe(e), for writing. Marks the component as changed. (See ECS.trackChanges())
+     *
+     * @param e the entity
+     * @return the component cast to: (T extends Component), or null
+     */
+    @SuppressWarnings("unchecked")
+    public final T getMut(Entity e) {
+        final int id = e.id();
+        componentManager.markChanged(id,typeID);
+        return (T)componentManager.getComponentUnsafe(id,typeID);
+    }
+
+    /**
+     * Marks the entity's component as changed. No effect if the type does not track changes
+     *
+     * @param e the entity
+     */
+    public final void markChanged(Entity e) {
+        componentManager.markChanged(e.id(),typeID);
+    }
+
+    /**
+     * @param e the entity
+     * @return the tick of the last change of the entity's component. 0 if never changed or not tracked
+     */
+    public final long changedTick(Entity e) {
+        return componentManager.changedTick(e.id(),typeID);
+    }
+
     /**
      * Class-cast with checking for index out of bounds
      *
@@ -45,4 +79,36 @@ public class Getter<T extends Component>{
     public final T get(Entity e) {
         return clazz.cast(componentManager.getComponent(e.id(),typeID));
     }
+
+    /**
+     * Direct casting without checking the generation of the handle
+     *
+     * @param handle the entity handle
+     * @return the component cast to: (T extends Component), or null
+     */
+    @SuppressWarnings("unchecked")
+    public final T getUnsafe(long handle) {
+        return (T)componentManager.getComponentUnsafe((int) handle,typeID);
+    }
+
+    /**
+     * @param handle the entity handle
+     * @return the component cast to: (T extends Component), or null if the handle is stale
+     */
+    public final T get(long handle) {
+        if (!entityManager.isAlive(handle)) return null;
+        return clazz.cast(componentManager.getComponent((int) handle,typeID));
+    }
+
+    /**
+     * Iterates every component of the type, regardless of entity or system.
+     * Dense if the type uses SparseSet storage. (ECS.useSparseStorage())
+     * Useful for systems that only care about a single component type.
+     *
+     * @param itr the iterator
+     */
+    @SuppressWarnings("unchecked")
+    public final void forEach(Iterator<T> itr) {
+        componentManager.iterate(typeID,(Iterator<Component>) itr);
+    }
 }
@@ -0,0 +1,274 @@
+package com.nudge.ecs;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ *
+ * Column component where the fields are kept outside the java heap.
+ * For plain-data components with a very large number of instances, where the
+ * heap size and GC work of object components (and their containers / pools) is the problem.
+ *
+ * Fields are declared like the heap columns, in the subclass field initializers:
+ *
+ *     public class Health extends OffHeapColumns {
+ *         public final IntField hp = intField("hp");
+ *         public final FloatField regen = floatField("regen");
+ *     }
+ *
+ * Each entity row is a fixed-size record (fields aligned to their size) in native memory.
+ * The records are kept in blocks (direct buffers) of blockRows rows. A block is allocated
+ * the first time an entity id inside its range gets the component. Blocks are never moved or copied.
+ * Fields are read and written through VarHandles, in native byte order.
+ *
+ * Lifetime: the blocks belong to the ECS and are released on ECS.terminate().
+ * Any access after that throws an IllegalStateException. (The memory itself is returned when the buffers
+ * are collected.) So does access to a row in a block that was never allocated (no entity in its range
+ * had the component). Other rows of an allocated block read zero.
+ *
+ * Heap columns (floatColumn() etc.) can still be declared alongside off-heap fields.
+ * RunTimeStatistics reports the off-heap bytes of every type.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public abstract class OffHeapColumns extends Columns {
+
+    private static final ByteBuffer[] RELEASED = new ByteBuffer[0];
+
+    private static final VarHandle FLOAT = MethodHandles.byteBufferViewVarHandle(float[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    public static final int DEFAULT_BLOCK_ROWS = 1024;
+
+    private final int blockShift;
+    private final int blockMask;
+    private ByteBuffer[] blocks;
+    private int allocatedBlocks;
+    private int recordSize;
+    private int stride;
+    private boolean laidOut;
+
+    /**
+     * @param blockRows number of entity rows per block. Rounded up to the nearest power of two
+     */
+    protected OffHeapColumns(int blockRows) {
+        super(1);
+        blockRows = Math.max(blockRows,1);
+        int rows = Integer.highestOneBit(blockRows);
+        if (rows < blockRows) rows <<= 1;
+        this.blockShift = Integer.numberOfTrailingZeros(rows);
+        this.blockMask = rows - 1;
+        this.blocks = new ByteBuffer[1];
+    }
+
+    protected OffHeapColumns() {
+        this(DEFAULT_BLOCK_ROWS);
+    }
+
+    protected final FloatField floatField(String name) {
+        return new FloatField(this,name,field(Float.BYTES));
+    }
+
+    protected final IntField intField(String name) {
+        return new IntField(this,name,field(Integer.BYTES));
+    }
+
+    protected final LongField longField(String name) {
+        return new LongField(this,name,field(Long.BYTES));
+    }
+
+    /**
+     * @return the bytes of native memory allocated by this component
+     */
+    public final long offHeapBytes() {
+        return (long) allocatedBlocks * blockBytes();
+    }
+
+    /**
+     * @return the size of one entity record in bytes
+     */
+    public final int stride() {
+        return stride;
+    }
+
+    public final int blockRows() {
+        return blockMask + 1;
+    }
+
+    public final boolean isReleased() {
+        return blocks == RELEASED;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return super.sizeInBytes() + offHeapBytes();
+    }
+
+    @Override
+    protected void ensureRow(int entityID) {
+        super.ensureRow(entityID);
+        if (blocks == RELEASED) throw new IllegalStateException("Off-heap columns released");
+        if (!laidOut) {
+            stride = align(recordSize,Long.BYTES);
+            laidOut = true;
+        }
+        if (stride == 0) return;
+        final int b = entityID >>> blockShift;
+        if (b >= blocks.length)
+            blocks = Arrays.copyOf(blocks,((b + 1) * 3) / 2 + 1);
+        if (blocks[b] == null) {
+            blocks[b] = ByteBuffer.allocateDirect((int) blockBytes()).order(ByteOrder.nativeOrder());
+            allocatedBlocks++;
+        }
+    }
+
+    @Override
+    protected void clearRow(int entityID) {
+        super.clearRow(entityID);
+        if (stride == 0) return;
+        final ByteBuffer block = blocks[entityID >>> blockShift];
+        final int offset = (entityID & blockMask) * stride;
+        for (int i = 0; i < stride; i += Long.BYTES)
+            LONG.set(block,offset + i,0L);
+    }
+
+    /**
+     * Releases all blocks. Called by the ECS on termination.
+     */
+    protected final void release() {
+        blocks = RELEASED;
+        allocatedBlocks = 0;
+    }
+
+    private IllegalStateException noBlock(int entityID) {
+        if (blocks == RELEASED) return new IllegalStateException("Off-heap columns released");
+        return new IllegalStateException("No off-heap row for entity " + entityID + ". (It never had the component)");
+    }
+
+    private int field(int size) {
+        if (laidOut || componentType() != null)
+            throw new IllegalStateException("Declare fields before registering");
+        final int offset = align(recordSize,size);
+        recordSize = offset + size;
+        return offset;
+    }
+
+    private long blockBytes() {
+        return (long) (blockMask + 1) * stride;
+    }
+
+    private static int align(int offset, int size) {
+        return (offset + size - 1) & -size;
+    }
+
+
+    public static abstract class Field {
+
+        protected final OffHeapColumns owner;
+        private final String name;
+        private final int offset;
+
+        Field(OffHeapColumns owner, String name, int offset) {
+            this.owner = owner;
+            this.name = name;
+            this.offset = offset;
+        }
+
+        public final String name() {
+            return name;
+        }
+
+        public final int offset() {
+            return offset;
+        }
+
+        protected final ByteBuffer block(int entityID) {
+            final ByteBuffer[] blocks = owner.blocks;
+            final int b = entityID >>> owner.blockShift;
+            if (b < blocks.length) {
+                final ByteBuffer block = blocks[b];
+                if (block != null) return block;
+            } throw owner.noBlock(entityID);
+        }
+
+        protected final int index(int entityID) {
+            return (entityID & owner.blockMask) * owner.stride + offset;
+        }
+    }
+
+    public static final class FloatField extends Field {
+
+        private FloatField(OffHeapColumns owner, String name, int offset) {
+            super(owner,name,offset);
+        }
+
+        public float get(int entityID) {
+            return (float) FLOAT.get(block(entityID),index(entityID));
+        }
+
+        public void set(int entityID, float value) {
+            FLOAT.set(block(entityID),index(entityID),value);
+        }
+
+        public float get(Entity e) {
+            return get(e.id());
+        }
+
+        public void set(Entity e, float value) {
+            set(e.id(),value);
+        }
+    }
+
+    public static final class IntField extends Field {
+
+        private IntField(OffHeapColumns owner, String name, int offset) {
+            super(owner,name,offset);
+        }
+
+        public int get(int entityID) {
+            return (int) INT.get(block(entityID),index(entityID));
+        }
+
+        public void set(int entityID, int value) {
+            INT.set(block(entityID),index(entityID),value);
+        }
+
+        public int get(Entity e) {
+            return get(e.id());
+        }
+
+        public void set(Entity e, int value) {
+            set(e.id(),value);
+        }
+    }
+
+    public static final class LongField extends Field {
+
+        private LongField(OffHeapColumns owner, String name, int offset) {
+            super(owner,name,offset);
+        }
+
+        public long get(int entityID) {
+            return (long) LONG.get(block(entityID),index(entityID));
+        }
+
+        public void set(int entityID, long value) {
+            LONG.set(block(entityID),index(entityID),value);
+        }
+
+        public long get(Entity e) {
+            return get(e.id());
+        }
+
+        public void set(Entity e, long value) {
+            set(e.id(),value);
+        }
+    }
+}
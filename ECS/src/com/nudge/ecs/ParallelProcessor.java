@@ -0,0 +1,153 @@
+package com.nudge.ecs;
+
+import com.nudge.ecs.util.Countdown;
+
+import java.util.concurrent.Executor;
+
+/**
+ *
+ * Splits the dense entity array of a system into ranges processed on an executor.
+ * See ECSystem.setParallel() / processParallel().
+ *
+ * The ranges are fixed by the entity count and the number of ranges, not by thread scheduling.
+ * The calling thread processes the first range. Each range has its own CommandBuffer
+ * (ECSystem.commands() returns the buffer of the range on the processing thread).
+ * After the pass, the buffers are merged into the system's buffer in range order,
+ * so the recorded structural changes are exactly those of a serial run, in the same order.
+ * The wait for the ranges is a managed block (See Countdown), so the executor can be the one running
+ * the system, i.e. the common pool of the Scheduler. Ranges the executor rejects run on the calling thread.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class ParallelProcessor {
+
+    private final ECSystem system;
+    private final Executor executor;
+    private final Range[] ranges;
+    private final ThreadLocal<CommandBuffer> current = new ThreadLocal<>();
+    private volatile Throwable failure;
+    private final Countdown latch = new Countdown();
+    private EntityArray entities;
+    private boolean timed;
+    private float dt;
+    private int used;
+
+    protected ParallelProcessor(ECSystem system, ECS ecs, Executor executor, int rangeCount) {
+        if (executor == null) throw new IllegalArgumentException("null executor");
+        if (rangeCount < 1) throw new IllegalArgumentException("ranges < 1");
+        this.system = system;
+        this.executor = executor;
+        this.ranges = new Range[rangeCount];
+        for (int i = 0; i < rangeCount; i++)
+            ranges[i] = new Range(new CommandBuffer(ecs,16));
+    }
+
+    protected void run(EntityArray entities, boolean timed, float dt) {
+        final int count = entities.count();
+        if (count == 0) return;
+        final int size = (count + ranges.length - 1) / ranges.length;
+        this.used = (count + size - 1) / size;
+        this.entities = entities;
+        this.timed = timed;
+        this.dt = dt;
+        this.failure = null;
+        latch.reset(used - 1);
+        RuntimeException rejected = null;
+        for (int r = 1; r < used; r++) {
+            ranges[r].set(r * size, Math.min(count, (r + 1) * size));
+            if (rejected == null) {
+                try {
+                    executor.execute(ranges[r]);
+                    continue;
+                } catch (RuntimeException e) {
+                    rejected = e;
+                }
+            } ranges[r].run(); // not accepted by the executor. Run inline
+        }
+        ranges[0].set(0, Math.min(count,size));
+        ranges[0].process();
+        latch.await(); // the accepted ranges are done before anything is thrown
+        this.entities = null;
+        Throwable t = failure;
+        if (rejected != null) {
+            if (t != null) rejected.addSuppressed(t);
+            t = rejected;
+        }
+        if (t != null) {
+            for (int r = 0; r < used; r++) ranges[r].commands.clear();
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            if (t instanceof Error) throw (Error) t;
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * @return the command buffer of the range processed by the calling thread, or null
+     */
+    protected CommandBuffer commands() {
+        return current.get();
+    }
+
+    /**
+     * Appends the commands of every range to the destination, in range order
+     */
+    protected void merge(CommandBuffer dst) {
+        for (int r = 0; r < used; r++) {
+            dst.append(ranges[r].commands);
+            ranges[r].commands.clear();
+        } used = 0;
+    }
+
+    public int ranges() {
+        return ranges.length;
+    }
+
+    private final class Range implements Runnable {
+
+        private final CommandBuffer commands;
+        private int from, to;
+
+        Range(CommandBuffer commands) {
+            this.commands = commands;
+        }
+
+        void set(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void process() {
+            current.set(commands);
+            try {
+                final EntityArray entities = ParallelProcessor.this.entities;
+                if (timed) {
+                    for (int i = from; i < to; i++) {
+                        final Entity e = entities.get(i);
+                        if (system.accepts(e)) system.processEntity(e,dt);
+                    }
+                } else {
+                    for (int i = from; i < to; i++) {
+                        final Entity e = entities.get(i);
+                        if (system.accepts(e)) system.processEntity(e);
+                    }
+                }
+            } catch (Throwable t) {
+                if (failure == null) failure = t;
+            } finally {
+                current.set(null);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                process();
+            } finally {
+                latch.countDown();
+            }
+        }
+    }
+}
@@ -2,11 +2,13 @@ package com.nudge.ecs;
 
 /**
  *
- * This is the "hub" for ECS statistics. Contains getters only.
- * Query stats directly or in separate thread, using Diagnostics.
- * Running diagnostics is the purpose of this class.
- * It's thread safe, but may be inaccurate by a couple of frames.
- * No methods here should interrupt or cause issues in the ECS main-thread.
+ * This is the "hub" for ECS statistics.
+ * The getters read the live counters of the ECS. Use them from the ECS main-thread only.
+ *
+ * Other threads (Diagnostics) read snapshot(). An immutable StatisticsSnapshot captured on the
+ * main thread every publishInterval frames (tick()) and published through a volatile reference.
+ * Consistent values, no locks and no contention on the main thread.
+ * The Scheduler ticks once per process. Without it, call tick() once per frame.
  *
  * @author Frederik Dahl
  * 09/09/2021
@@ -18,11 +20,43 @@ public class RunTimeStatistics {
 
 
     private ECS ecs;
+    private volatile StatisticsSnapshot snapshot = StatisticsSnapshot.EMPTY;
+    private int publishInterval = 60;
+    private long frame;
 
     public RunTimeStatistics(ECS ecs) {
         this.ecs = ecs;
     }
 
+    /**
+     * Main thread. Counts a frame, and publishes a new snapshot every publishInterval frames.
+     */
+    public void tick() {
+        if (++frame % publishInterval == 0) publish();
+    }
+
+    /**
+     * Main thread. Captures and publishes a snapshot now.
+     */
+    public void publish() {
+        snapshot = new StatisticsSnapshot(ecs,frame);
+    }
+
+    /**
+     * Thread safe.
+     * @return the latest published snapshot
+     */
+    public StatisticsSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @param frames number of ticks between published snapshots
+     */
+    public void setPublishInterval(int frames) {
+        publishInterval = Math.max(frames,1);
+    }
+
 
     // Entities
 
@@ -55,6 +89,10 @@ public class RunTimeStatistics {
 
     public float componentContainerLoadFactor(ComponentType type) { return ecs.componentManager.getContainerLoadFactor(type); }
 
+    public long componentsOffHeapBytes() { return ecs.componentManager.getOffHeapBytes(); }
+
+    public long componentOffHeapBytes(ComponentType type) { return ecs.componentManager.getOffHeapBytes(type); }
+
     public long componentsAdded() { return ecs.componentManager.componentsAdded(); }
 
     public long componentsRemoved() { return ecs.componentManager.componentsRemoved(); }
@@ -77,6 +115,20 @@ public class RunTimeStatistics {
 
 
 
+    // Systems
+
+    public long systemLastNanos(Class<? extends ECSystem> systemClass) {
+        ECSystem system = ecs.systemManager.getSystem(systemClass);
+        return system == null ? 0 : system.lastProcessNanos();
+    }
+
+    public long systemAverageNanos(Class<? extends ECSystem> systemClass) {
+        ECSystem system = ecs.systemManager.getSystem(systemClass);
+        return system == null ? 0 : system.averageProcessNanos();
+    }
+
+    public int schedulerStages() { return ecs.scheduler.stageCount(); }
+
     private int memoryUsageMB() {
         Runtime runtime = Runtime.getRuntime();
         int free = (int)(runtime.freeMemory()/1000000L);
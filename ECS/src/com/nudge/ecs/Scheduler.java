@@ -0,0 +1,210 @@
+package com.nudge.ecs;
+
+import com.nudge.ecs.util.Countdown;
+import com.nudge.ecs.util.containers.Container;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * Runs the added systems each frame, running systems with no conflicting component access at the same time.
+ *
+ * Systems declare their access in their constructor: reads(...), writes(...) and structuralChanges().
+ * (The types of the system's group are always read). Systems that declare nothing are run alone.
+ *
+ * On ECS initialization the systems are ordered into stages. The order systems are added in is the
+ * serial order: A system is placed in a later stage than every earlier added system it conflicts with.
+ * The systems of a stage run concurrently on the executor (the calling thread runs one of them).
+ *
+ * Structural changes must be recorded with commands() and the system must declare structuralChanges().
+ * A system recording commands without declaring it throws an IllegalStateException when processed.
+ * The commands of a stage are played back (in the order the systems were added) at the end of the stage,
+ * followed by a clean. Every later added system is placed in a later stage. Stages without structural
+ * systems end without a sync point.
+ *
+ *     scheduler.add(dyingSystem);
+ *     scheduler.add(collisionSystem);
+ *     scheduler.add(movementSystem);
+ *     ecs.initialize();
+ *     ...
+ *     scheduler.process(dt);
+ *
+ * A system running alone in its stage uses its parallel mode if set. (ECSystem.setParallel())
+ * The executor may be the one running parallel systems: waits for tasks are managed blocks.
+ * (See Countdown) If the executor rejects a task, the rest of the stage runs on the calling thread,
+ * and the rejection is thrown once every accepted task is done.
+ * Each process ticks the RunTimeStatistics. (Snapshot publishing)
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class Scheduler {
+
+    private final ECS ecs;
+    private final Container<ECSystem> systems;
+    private Executor executor;
+    private ECSystem[][] stages;
+    private Task[][] tasks; // by stage, one per system
+    private boolean[] syncAfter;
+    private volatile Throwable failure;
+    private final Countdown latch = new Countdown();
+    private float dt;
+
+    protected Scheduler(ECS ecs) {
+        this.ecs = ecs;
+        this.systems = new Container<>();
+        this.executor = ForkJoinPool.commonPool();
+        this.stages = new ECSystem[0][];
+        this.tasks = new Task[0][];
+        this.syncAfter = new boolean[0];
+    }
+
+    /**
+     * Adds the system to the schedule. Before ECS initialization.
+     * @param system a system of this ECS
+     */
+    public void add(ECSystem system) {
+        if (ecs.isInitialized()) throw new IllegalStateException("Add systems before ECS initialization");
+        if (system.getEcs() != ecs) throw new IllegalArgumentException("System of another ECS");
+        systems.push(system);
+    }
+
+    public void setExecutor(Executor executor) {
+        if (executor == null) throw new IllegalArgumentException("null executor");
+        this.executor = executor;
+    }
+
+    /**
+     * Runs every stage. Cleans before the first.
+     * @param dt delta time
+     */
+    public void process(float dt) {
+        ecs.entityManager.clean();
+        for (int s = 0; s < stages.length; s++) {
+            final ECSystem[] stage = stages[s];
+            if (stage.length == 1)
+                stage[0].processScheduled(dt,false);
+            else runConcurrent(stage,tasks[s],dt);
+            if (syncAfter[s]) {
+                for (ECSystem system : stage)
+                    system.playbackCommands();
+                ecs.entityManager.clean();
+            }
+        }
+        ecs.runTimeStatistics.tick();
+    }
+
+    public int stageCount() {
+        return stages.length;
+    }
+
+    /**
+     * @param stage the stage index
+     * @return the systems of the stage (do not modify)
+     */
+    public ECSystem[] stage(int stage) {
+        return stages[stage];
+    }
+
+    public boolean hasSyncPointAfter(int stage) {
+        return syncAfter[stage];
+    }
+
+    // called on ECS initialization
+    protected void build() {
+        final int n = systems.count();
+        final int[] stageOf = new int[n];
+        int stageCount = 0;
+        int minStage = 0;
+        int maxStage = 0;
+        for (int i = 0; i < n; i++) {
+            final ECSystem system = systems.get(i);
+            int stage = minStage;
+            for (int k = 0; k < i; k++)
+                if (system.conflicts(systems.get(k)))
+                    stage = Math.max(stage,stageOf[k] + 1);
+            if (system.isStructural()) {
+                // run no earlier than any earlier system. Every later system runs after the sync
+                stage = Math.max(stage,maxStage);
+                minStage = stage + 1;
+            }
+            stageOf[i] = stage;
+            maxStage = Math.max(maxStage,stage);
+            stageCount = Math.max(stageCount,stage + 1);
+        }
+        final int[] sizes = new int[stageCount];
+        for (int i = 0; i < n; i++) sizes[stageOf[i]]++;
+        stages = new ECSystem[stageCount][];
+        tasks = new Task[stageCount][];
+        syncAfter = new boolean[stageCount];
+        for (int s = 0; s < stageCount; s++) {
+            stages[s] = new ECSystem[sizes[s]];
+            tasks[s] = new Task[sizes[s]];
+            sizes[s] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            final int s = stageOf[i];
+            final ECSystem system = systems.get(i);
+            tasks[s][sizes[s]] = new Task(system);
+            stages[s][sizes[s]++] = system;
+            if (system.isStructural()) syncAfter[s] = true;
+        }
+    }
+
+    // The tasks are built with the stages. Nothing is allocated per frame
+    private void runConcurrent(ECSystem[] stage, Task[] tasks, float dt) {
+        this.dt = dt;
+        this.failure = null;
+        latch.reset(stage.length - 1);
+        RuntimeException rejected = null;
+        for (int i = 1; i < stage.length; i++) {
+            if (rejected == null) {
+                try {
+                    executor.execute(tasks[i]);
+                    continue;
+                } catch (RuntimeException e) {
+                    rejected = e;
+                }
+            } tasks[i].run(); // not accepted by the executor. Run inline
+        }
+        try {
+            stage[0].processScheduled(dt,true);
+        } catch (Throwable t) {
+            if (failure == null) failure = t;
+        }
+        latch.await(); // the accepted tasks are done before anything is thrown
+        Throwable t = failure;
+        if (rejected != null) {
+            if (t != null) rejected.addSuppressed(t);
+            t = rejected;
+        }
+        if (t != null) {
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            if (t instanceof Error) throw (Error) t;
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private final class Task implements Runnable {
+
+        private final ECSystem system;
+
+        Task(ECSystem system) {
+            this.system = system;
+        }
+
+        @Override
+        public void run() {
+            try {
+                system.processScheduled(dt,true);
+            } catch (Throwable t) {
+                if (failure == null) failure = t;
+            } finally {
+                latch.countDown();
+            }
+        }
+    }
+}
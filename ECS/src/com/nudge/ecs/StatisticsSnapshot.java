@@ -0,0 +1,200 @@
+package com.nudge.ecs;
+
+import com.nudge.ecs.util.containers.Container;
+
+import java.util.List;
+
+/**
+ *
+ * Immutable copy of the RunTimeStatistics, captured on the main thread.
+ * (RunTimeStatistics.tick() / publish())
+ *
+ * Published through a volatile reference. Any thread can read the latest snapshot
+ * (RunTimeStatistics.snapshot()) without locking, and every value of a snapshot
+ * is from the same frame. Per-type values are indexed by ComponentType.id(),
+ * per-system values by the order the systems were registered in.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public final class StatisticsSnapshot {
+
+    protected static final StatisticsSnapshot EMPTY = new StatisticsSnapshot();
+
+    private final long frame;
+    private final long timeNanos;
+
+    private final int entitiesActive;
+    private final long entitiesCreated;
+    private final long entitiesLost;
+    private final int entitiesInMemory;
+
+    private final int componentsActive;
+    private final int componentsPooled;
+    private final long componentsObtained;
+    private final long componentsAdded;
+    private final long componentsRemoved;
+    private final long componentsDiscarded;
+    private final long componentsLost;
+    private final long componentsOffHeapBytes;
+    private final float componentPoolsLoadFactor;
+    private final float componentContainersLoadFactor;
+    private final int componentPools;
+    private final int poolRefits;
+    private final int containerRefits;
+
+    private final String[] typeNames;
+    private final int[] typePooled;
+    private final long[] typeObtained;
+    private final long[] typeDiscarded;
+    private final float[] typePoolLoadFactor;
+    private final float[] typeContainerLoadFactor;
+    private final long[] typeOffHeapBytes;
+
+    private final String[] systemNames;
+    private final long[] systemLastNanos;
+    private final long[] systemAverageNanos;
+
+    private StatisticsSnapshot() {
+        frame = timeNanos = 0L;
+        entitiesActive = entitiesInMemory = componentsActive = componentsPooled = 0;
+        entitiesCreated = entitiesLost = componentsObtained = componentsAdded = 0L;
+        componentsRemoved = componentsDiscarded = componentsLost = componentsOffHeapBytes = 0L;
+        componentPoolsLoadFactor = componentContainersLoadFactor = 0f;
+        componentPools = poolRefits = containerRefits = 0;
+        typeNames = systemNames = new String[0];
+        typePooled = new int[0];
+        typeObtained = typeDiscarded = typeOffHeapBytes = systemLastNanos = systemAverageNanos = new long[0];
+        typePoolLoadFactor = typeContainerLoadFactor = new float[0];
+    }
+
+    // main thread
+    protected StatisticsSnapshot(ECS ecs, long frame) {
+        final EntityManager em = ecs.entityManager;
+        final ComponentManager cm = ecs.componentManager;
+        final ComponentPools pools = cm.pools;
+        this.frame = frame;
+        this.timeNanos = System.nanoTime();
+        entitiesActive = em.entities();
+        entitiesCreated = em.entitiesCreated();
+        entitiesLost = em.entitiesDestroyed();
+        entitiesInMemory = em.entitiesInMemory();
+        componentsActive = cm.componentsActive();
+        componentsPooled = pools.inPoolTotal();
+        componentsObtained = pools.obtainedTotal();
+        componentsAdded = cm.componentsAdded();
+        componentsRemoved = cm.componentsRemoved();
+        componentsDiscarded = pools.discardedTotal();
+        componentsLost = cm.componentsLost();
+        componentsOffHeapBytes = cm.getOffHeapBytes();
+        componentPoolsLoadFactor = pools.loadFactorAll();
+        componentContainersLoadFactor = cm.getContainersLoadFactor();
+        componentPools = pools.poolCount();
+        poolRefits = cm.poolRefits();
+        containerRefits = cm.containerRefits();
+
+        final List<ComponentType> types = cm.typeManager.getList();
+        final int typeCount = types.size();
+        typeNames = new String[typeCount];
+        typePooled = new int[typeCount];
+        typeObtained = new long[typeCount];
+        typeDiscarded = new long[typeCount];
+        typePoolLoadFactor = new float[typeCount];
+        typeContainerLoadFactor = new float[typeCount];
+        typeOffHeapBytes = new long[typeCount];
+        for (ComponentType type : types) {
+            final int i = type.id();
+            typeNames[i] = type.name();
+            typePooled[i] = pools.inPool(type);
+            typeObtained[i] = pools.obtained(type);
+            typeDiscarded[i] = pools.discarded(type);
+            typePoolLoadFactor[i] = pools.loadFactor(type);
+            typeContainerLoadFactor[i] = cm.getContainerLoadFactor(type);
+            typeOffHeapBytes[i] = cm.getOffHeapBytes(type);
+        }
+
+        final Container<ECSystem> systems = ecs.systemManager.systems;
+        final int systemCount = systems.count();
+        systemNames = new String[systemCount];
+        systemLastNanos = new long[systemCount];
+        systemAverageNanos = new long[systemCount];
+        for (int i = 0; i < systemCount; i++) {
+            final ECSystem system = systems.get(i);
+            systemNames[i] = system.getClass().getSimpleName();
+            systemLastNanos[i] = system.lastProcessNanos();
+            systemAverageNanos[i] = system.averageProcessNanos();
+        }
+    }
+
+    /**
+     * @return the frame (RunTimeStatistics.tick() count) of the capture
+     */
+    public long frame() { return frame; }
+
+    /**
+     * @return System.nanoTime() at the capture
+     */
+    public long timeNanos() { return timeNanos; }
+
+    public int entitiesActive() { return entitiesActive; }
+
+    public long entitiesCreated() { return entitiesCreated; }
+
+    public long entitiesLost() { return entitiesLost; }
+
+    public int entitiesInMemory() { return entitiesInMemory; }
+
+    public int componentsActive() { return componentsActive; }
+
+    public int componentsPooled() { return componentsPooled; }
+
+    public long componentsObtained() { return componentsObtained; }
+
+    public long componentsAdded() { return componentsAdded; }
+
+    public long componentsRemoved() { return componentsRemoved; }
+
+    public long componentsDiscarded() { return componentsDiscarded; }
+
+    public long componentsLost() { return componentsLost; }
+
+    public int componentsInMemory() { return componentsActive + componentsPooled; }
+
+    public long componentsOffHeapBytes() { return componentsOffHeapBytes; }
+
+    public float componentPoolsLoadFactor() { return componentPoolsLoadFactor; }
+
+    public float componentContainersLoadFactor() { return componentContainersLoadFactor; }
+
+    public int componentPools() { return componentPools; }
+
+    public int poolRefits() { return poolRefits; }
+
+    public int containerRefits() { return containerRefits; }
+
+    public int typeCount() { return typeNames.length; }
+
+    public String typeName(int typeID) { return typeNames[typeID]; }
+
+    public int componentsPooled(int typeID) { return typePooled[typeID]; }
+
+    public long componentsObtained(int typeID) { return typeObtained[typeID]; }
+
+    public long componentsDiscarded(int typeID) { return typeDiscarded[typeID]; }
+
+    public float componentPoolLoadFactor(int typeID) { return typePoolLoadFactor[typeID]; }
+
+    public float componentContainerLoadFactor(int typeID) { return typeContainerLoadFactor[typeID]; }
+
+    public long componentOffHeapBytes(int typeID) { return typeOffHeapBytes[typeID]; }
+
+    public int systemCount() { return systemNames.length; }
+
+    public String systemName(int index) { return systemNames[index]; }
+
+    public long systemLastNanos(int index) { return systemLastNanos[index]; }
+
+    public long systemAverageNanos(int index) { return systemAverageNanos[index]; }
+}
@@ -3,6 +3,7 @@ package com.nudge.ecs;
 
 import com.nudge.ecs.util.containers.Container;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,26 +15,73 @@ import java.util.Map;
 
 public class SystemManager {
 
-    private final Map<Class<? extends ECSystem>, Long> systemBits;
+    private final Map<Class<? extends ECSystem>, Integer> systemIDs;
     private final Map<Class<? extends ECSystem>, ECSystem> systemsMap;
     protected final Container<ECSystem> systems;
-    private int bitGen = 0;
+    protected final Container<EntityView> views;
+    private EntityView[] viewsByGroup;
+    private EntityView[][] viewsByType;
+    private EntityView[] viewsOfAll;
+    private int genID = 0;
 
     private final ECS ecs;
 
     protected SystemManager(ECS ecs) {
         this.ecs = ecs;
         systems = new Container<>(Long.SIZE);
+        views = new Container<>();
+        viewsByGroup = new EntityView[0];
+        viewsByType = new EntityView[0][];
+        viewsOfAll = new EntityView[0];
         systemsMap = new HashMap<>();
-        systemBits = new HashMap<>();
+        systemIDs = new HashMap<>();
     }
 
 
     protected void initializeSystems() {
         systems.fit(true);
+        views.fit(true);
+        buildInterestTable();
         systems.iterate(ECSystem::initialize);
     }
 
+    /**
+     * type id -> the views whose group requires the type. Built on initialize,
+     * when all types and systems are registered. Used by EntityManager.clean()
+     */
+    private void buildInterestTable() {
+        final int typeCount = ecs.componentManager.typeManager.typeCount();
+        final int[] counts = new int[typeCount];
+        int emptyGroups = 0;
+        for (int i = 0; i < views.count(); i++) {
+            ComponentMask mask = views.get(i).group().mask();
+            if (mask.isEmpty()) emptyGroups++;
+            for (int t = mask.nextSetBit(0); t >= 0; t = mask.nextSetBit(t + 1)) counts[t]++;
+        }
+        viewsByType = new EntityView[typeCount][];
+        for (int t = 0; t < typeCount; t++) {
+            viewsByType[t] = new EntityView[counts[t]];
+            counts[t] = 0;
+        }
+        viewsOfAll = new EntityView[emptyGroups];
+        emptyGroups = 0;
+        for (int i = 0; i < views.count(); i++) {
+            EntityView view = views.get(i);
+            ComponentMask mask = view.group().mask();
+            if (mask.isEmpty()) viewsOfAll[emptyGroups++] = view;
+            for (int t = mask.nextSetBit(0); t >= 0; t = mask.nextSetBit(t + 1))
+                viewsByType[t][counts[t]++] = view;
+        }
+    }
+
+    protected EntityView[] viewsOf(int typeID) {
+        return viewsByType[typeID];
+    }
+
+    protected EntityView[] viewsOfAll() {
+        return viewsOfAll;
+    }
+
     protected void deactivateSystems() {
         systems.iterate(ECSystem::deactivate);
     }
@@ -41,16 +89,42 @@ public class SystemManager {
     protected void terminate() {
         systems.iterate(ECSystem::terminate);
         systems.clear();
+        views.clear();
+        viewsByGroup = new EntityView[0];
         systemsMap.clear();
     }
 
-    protected void register(ECSystem system) {
+    protected void register(ECSystem system, int initialCap) {
         Class<? extends ECSystem> c = system.getClass();
-        if (systemsMap.get(c) == null) {
-            system.set(getBit(c));
-            systems.push(system);
-            systemsMap.put(c,system);
-        }
+        if (systemsMap.get(c) != null)
+            throw new IllegalStateException("System already registered: " + c.getSimpleName());
+        EntityView view = getView(system.getGroup(),initialCap);
+        system.set(getID(c),view);
+        view.addSystem(system);
+        systems.push(system);
+        systemsMap.put(c,system);
+    }
+
+    /**
+     * One view per ComponentGroup. Groups are unique by mask.
+     */
+    private EntityView getView(ComponentGroup group, int initialCap) {
+        if (group.id() >= viewsByGroup.length)
+            viewsByGroup = Arrays.copyOf(viewsByGroup,group.id() + 1);
+        EntityView view = viewsByGroup[group.id()];
+        if (view == null) {
+            view = new EntityView(group,initialCap);
+            viewsByGroup[group.id()] = view;
+            views.push(view);
+            ArchetypeStorage storage = ecs.componentManager.archetypes();
+            if (storage != null) storage.archetypes().iterate(view::archetypeCreated);
+        } return view;
+    }
+
+    // callback from ArchetypeStorage
+    protected void archetypeCreated(Archetype archetype) {
+        for (int i = 0; i < views.count(); i++)
+            views.get(i).archetypeCreated(archetype);
     }
 
     protected <T extends ECSystem> T getSystem(Class<T> c) {
@@ -58,11 +132,11 @@ public class SystemManager {
     }
 
 
-    private long getBit(Class<? extends ECSystem> c) {
-        Long flag = systemBits.get(c);
-        if(flag == null){
-            flag = 1L << bitGen++;
-            systemBits.put(c, flag);
-        }return flag;
+    private int getID(Class<? extends ECSystem> c) {
+        Integer id = systemIDs.get(c);
+        if(id == null){
+            id = genID++;
+            systemIDs.put(c, id);
+        }return id;
     }
 }
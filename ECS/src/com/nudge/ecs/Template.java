@@ -0,0 +1,119 @@
+package com.nudge.ecs;
+
+import com.nudge.ecs.util.containers.Container;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ *
+ * A fixed set of component types, declared once, for creating many entities at a time.
+ * (EntityManager.createBatch(template, n, initializer))
+ *
+ *     Template vulnerable = ecs.template(Body.class, Collider.class, Velocity.class);
+ *     final int BODY = vulnerable.slot(Body.class);
+ *     ...
+ *     entityManager.createBatch(vulnerable, 15000, (e, i, components) -> {
+ *         components[BODY] = new Body(...);
+ *         ...
+ *     });
+ *
+ * The initializer fills the components array (by slot) of each new entity. The array is reused.
+ * The types are resolved once. The entities go straight into the matching systems (views),
+ * without being marked dirty and revalidated. With archetype storage, straight into the chunks of
+ * the template's archetype.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class Template {
+
+    private final ComponentType[] types;
+    private final Component[] components;
+    private final ComponentMask mask;
+    private EntityView[] views;
+    private Archetype archetype;
+
+    protected Template(ComponentType[] types) {
+        if (types.length == 0) throw new IllegalArgumentException("Empty template");
+        this.types = types.clone();
+        Arrays.sort(this.types, Comparator.comparingInt(ComponentType::id));
+        this.components = new Component[types.length];
+        this.mask = new ComponentMask();
+        for (int i = 0; i < this.types.length; i++) {
+            if (mask.get(this.types[i].id()))
+                throw new IllegalArgumentException("Duplicate type in template");
+            mask.set(this.types[i].id());
+        }
+    }
+
+    /**
+     * @param type a type of the template
+     * @return the index of the type in the components array passed to the initializer
+     */
+    public int slot(ComponentType type) {
+        for (int i = 0; i < types.length; i++)
+            if (types[i] == type) return i;
+        throw new IllegalArgumentException("Type not in template: " + type.name());
+    }
+
+    public int slot(Class<? extends Component> componentClass) {
+        for (int i = 0; i < types.length; i++)
+            if (types[i].componentClass() == componentClass) return i;
+        throw new IllegalArgumentException("Type not in template: " + componentClass.getSimpleName());
+    }
+
+    public int size() {
+        return types.length;
+    }
+
+    public ComponentType type(int slot) {
+        return types[slot];
+    }
+
+    public ComponentMask mask() {
+        return mask;
+    }
+
+    protected ComponentType[] types() {
+        return types;
+    }
+
+    protected Component[] components() {
+        return components;
+    }
+
+    /**
+     * @return the views of every group contained by the template. Resolved on first use (after initialization)
+     */
+    protected EntityView[] views(SystemManager systemManager) {
+        if (views == null) {
+            final Container<EntityView> all = systemManager.views;
+            int count = 0;
+            for (int i = 0; i < all.count(); i++)
+                if (mask.containsAll(all.get(i).group().mask())) count++;
+            views = new EntityView[count];
+            count = 0;
+            for (int i = 0; i < all.count(); i++)
+                if (mask.containsAll(all.get(i).group().mask())) views[count++] = all.get(i);
+        } return views;
+    }
+
+    protected Archetype archetype(ArchetypeStorage storage) {
+        if (archetype == null) archetype = storage.archetype(mask);
+        return archetype;
+    }
+
+    @FunctionalInterface
+    public interface Initializer {
+
+        /**
+         * @param e the new entity
+         * @param index the index of the entity in the batch
+         * @param components fill with the components of the entity, by slot
+         */
+        void initialize(Entity e, int index, Component[] components);
+    }
+}
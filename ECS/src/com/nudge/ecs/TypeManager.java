@@ -12,7 +12,7 @@ import java.util.Map;
  *
  * ComponentType and ComponentGroup instances are created and stored here.
  *
- *       Maximum number of unique ComponentTypes: 64 (Might be reduced to int32)
+ *       Maximum number of unique ComponentTypes: 32767 (ComponentMasks are sized on ECS initialize)
  *       Maximum number of unique ComponentGroups: 32767
  *       You cannot delete types or groups from a manager instance once created.
  *       When you initiate a type, 1 "slot" gets taken.
@@ -32,9 +32,8 @@ public class TypeManager {
     private final List<ComponentType> typeList;
     private final Container<ComponentType> typesById;
     private final Container<ComponentGroup> groups;
-    private long nextFlag       = 1L;
     private short genGroupID    = 0;
-    private byte genTypeID      = 0;
+    private short genTypeID     = 0;
 
     protected TypeManager(ComponentManager componentManager) {
         this.manager = componentManager;
@@ -49,10 +48,9 @@ public class TypeManager {
         if (type == null) {
             if (manager.ecs.isInitialized())
                 throw new IllegalStateException("Creating new types after ECS init not allowed");
-            if (typeList.size() == Long.SIZE)
+            if (genTypeID == Short.MAX_VALUE)
                 throw new IllegalStateException("limit break: max types");
-            type = new ComponentType(c,nextFlag,genTypeID);
-            nextFlag = nextFlag << 1;
+            type = new ComponentType(c,genTypeID);
             genTypeID++;
             typeMap.put(c,type);
             typeList.add(type);
@@ -64,9 +62,9 @@ public class TypeManager {
 
     protected ComponentGroup getGroup(ComponentType... types) {
         ComponentGroup group;
-        long mask = 0;
+        ComponentMask mask = new ComponentMask(maskWidth());
         for (ComponentType type : types)
-            mask |= type.flag();
+            mask.set(type.id());
         group = lookUpGroup(mask);
         if (group == null) {
             if (manager.ecs.isInitialized())
@@ -89,7 +87,22 @@ public class TypeManager {
         return typeList;
     }
 
-    private ComponentGroup lookUpGroup(long mask) {
+    protected ComponentType getType(int typeID) {
+        return typesById.get(typeID);
+    }
+
+    protected int typeCount() {
+        return typeList.size();
+    }
+
+    /**
+     * @return the number of 64-bit words needed for a ComponentMask of all registered types
+     */
+    protected int maskWidth() {
+        return Math.max(1,(typeList.size() + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    private ComponentGroup lookUpGroup(ComponentMask mask) {
         ComponentGroup group;
         for (int i = 0; i < groups.count(); i++) {
             group = groups.get(i);
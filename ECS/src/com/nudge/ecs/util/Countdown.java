@@ -0,0 +1,93 @@
+package com.nudge.ecs.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * A reusable CountDownLatch for a single waiting thread. Reset it before handing out the work,
+ * count down from the workers and await on the thread that reset it.
+ * Unlike the CountDownLatch (one per use) and the Phaser (wait nodes), nothing is allocated per use.
+ *
+ * The waiter spins briefly, then parks until the last countDown() unparks it.
+ * Parking goes through ForkJoinPool.managedBlock(), so a waiting ForkJoinPool worker
+ * (i.e. a Scheduler stage running a parallel system) gets a compensating thread instead of
+ * starving the pool of the workers it waits for. On other threads it is a plain park.
+ * Interrupts are ignored while waiting, and the interrupt status is restored after.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class Countdown {
+
+    private static final int SPINS = 256;
+
+    private final AtomicInteger count = new AtomicInteger();
+    private final Blocker blocker = new Blocker();
+    private volatile Thread waiter;
+
+    /**
+     * Sets the count, and the calling thread as the waiter. Not while in use.
+     * @param count the number of countDown() calls to wait for
+     */
+    public void reset(int count) {
+        if (count < 0) throw new IllegalArgumentException("count < 0");
+        waiter = Thread.currentThread();
+        this.count.set(count);
+    }
+
+    /**
+     * Thread safe.
+     */
+    public void countDown() {
+        if (count.decrementAndGet() == 0) {
+            final Thread t = waiter;
+            if (t != null) LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Waits for the count to reach zero. From the thread that called reset()
+     */
+    public void await() {
+        for (int i = 0; i < SPINS; i++) {
+            if (count.get() <= 0) return;
+            Thread.onSpinWait();
+        }
+        blocker.interrupted = false;
+        while (count.get() > 0) {
+            try {
+                ForkJoinPool.managedBlock(blocker);
+            } catch (InterruptedException e) {
+                blocker.interrupted = true;
+            }
+        }
+        if (blocker.interrupted) Thread.currentThread().interrupt();
+    }
+
+    public int count() {
+        return count.get();
+    }
+
+    // used by the waiting thread only
+    private final class Blocker implements ForkJoinPool.ManagedBlocker {
+
+        boolean interrupted;
+
+        @Override
+        public boolean block() {
+            while (count.get() > 0) {
+                LockSupport.park(Countdown.this);
+                if (Thread.interrupted()) interrupted = true;
+            } return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return count.get() <= 0;
+        }
+    }
+}
@@ -43,7 +43,7 @@ import com.nudge.ecs.util.containers.Iterator;
  */
 
 @SuppressWarnings("unchecked")
-public class Container<E> implements ECSArray<E> {
+public class Container<E> implements IndexedContainer<E> {
 
     private int targetCap;
     private int peakIndex;
@@ -81,6 +81,7 @@ public class Container<E> implements ECSArray<E> {
         }
     }
 
+    @Override
     public E get(int index) {
         return (E)items[index];
     }
@@ -110,6 +111,7 @@ public class Container<E> implements ECSArray<E> {
         return (E)item;
     }
 
+    @Override
     public void set(E item, int index) {
         if (index >= items.length) {
             if (item != null) {
@@ -134,6 +136,7 @@ public class Container<E> implements ECSArray<E> {
         }
     }
 
+    @Override
     public E remove(int index) {
         Object item = items[index];
         if (item != null) {
@@ -170,6 +173,12 @@ public class Container<E> implements ECSArray<E> {
         }
     }
 
+    @Override
+    public void ensureCapacity(int n, int bound) {
+        if (bound > capacity())
+            resize(bound);
+    }
+
     @Override
     public boolean fit(boolean absolute) {
         int used = usedSpace();
@@ -234,6 +243,7 @@ public class Container<E> implements ECSArray<E> {
         return usedSpace() == count;
     }
 
+    @Override
     public int usedSpace() {
         return peakIndex + 1;
     }
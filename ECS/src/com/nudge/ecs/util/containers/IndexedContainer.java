@@ -0,0 +1,39 @@
+package com.nudge.ecs.util.containers;
+
+/**
+ *
+ * An ECSArray where items are placed and queried by an external index. (i.e. entity id)
+ *
+ * Container: Backed by one array covering the whole index range. Fastest lookup.
+ * SparseSet: Paged sparse index and a packed (dense) array. Memory scales with item count.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public interface IndexedContainer<E> extends ECSArray<E> {
+
+    /**
+     * @param index the index
+     * @return the item at index or null. Implementations may not check if the index is out of bounds
+     */
+    E get(int index);
+
+    void set(E item, int index);
+
+    E remove(int index);
+
+    /**
+     * Prepares the container for n items at indices below bound. (i.e. the ids of a batch of entities)
+     * @param n the number of items to be set
+     * @param bound the highest index to be set + 1
+     */
+    void ensureCapacity(int n, int bound);
+
+    /**
+     * @return the size of the range of indices currently covered by the container.
+     * Any index below this value can be passed to get() safely
+     */
+    int usedSpace();
+}
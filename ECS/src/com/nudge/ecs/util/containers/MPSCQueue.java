@@ -0,0 +1,74 @@
+package com.nudge.ecs.util.containers;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *
+ * Unbounded lock-free queue for many producer threads and a single consumer thread.
+ * push() is safe from any thread. poll() and isEmpty() only from the consumer.
+ *
+ * Producers swap themselves in as the tail (one atomic exchange), then link the previous tail.
+ * The consumer follows the links from a stub node. An item pushed but not yet linked
+ * is picked up by the next poll.
+ *
+ * One node is allocated per push, on the producer thread.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class MPSCQueue<E> {
+
+    private final AtomicReference<Node<E>> tail;
+    private Node<E> head;
+
+    public MPSCQueue() {
+        head = new Node<>(null);
+        tail = new AtomicReference<>(head);
+    }
+
+    /**
+     * Thread safe.
+     * @param item the item (not null)
+     */
+    public void push(E item) {
+        if (item == null) throw new IllegalArgumentException("null item");
+        final Node<E> node = new Node<>(item);
+        final Node<E> prev = tail.getAndSet(node);
+        prev.next = node;
+    }
+
+    /**
+     * Consumer only.
+     * @return the next item, or null if none
+     */
+    public E poll() {
+        final Node<E> next = head.next;
+        if (next == null) return null;
+        final E item = next.item;
+        next.item = null;
+        head = next;
+        return item;
+    }
+
+    /**
+     * Consumer only. A single volatile read.
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    public boolean notEmpty() {
+        return head.next != null;
+    }
+
+    private static final class Node<E> {
+        private E item;
+        private volatile Node<E> next;
+
+        Node(E item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.nudge.ecs.util.containers;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Paged sparse set. Items are placed by an external index (i.e. entity id) like the Container,
+ * but stored tightly packed in a dense array. The sparse index (index -> dense position) is
+ * split into fixed-size pages that are only allocated when an item is placed inside their range,
+ * and released again when their last item is removed.
+ *
+ * Use-case:
+ *
+ * Rarely used components. A Container grows its backing array to cover the highest index set.
+ * So a single component on an entity with a high id allocates an array the size of the id-space.
+ * With the SparseSet, memory scales with the number of items (+ one page per populated range).
+ *
+ * Lookup costs one more array read than the Container.
+ * Iteration is dense. (No holes to skip, but the order is not the index order)
+ * Removal swaps the last dense item into the hole.
+ *
+ * !! target capacity is important for all ECSArrays. They are auto-resizable
+ * and the targetCap value is the "restingCap" for the arrays.
+ * In most cases, when you remove the final item and the array length is greater
+ * than the targetCap it will shrink back to that "restingCap".
+ * The fit() method too, will consider the targetCap. Unless you fit absolute.
+ * You can set the targetCap after creating a ECSArray.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+@SuppressWarnings("unchecked")
+public class SparseSet<E> implements IndexedContainer<E> {
+
+    public static final int DEFAULT_PAGE_SIZE = 256;
+
+    private static final int NONE = -1;
+
+    private final int pageShift;
+    private final int pageMask;
+
+    private int[][] pages;
+    private int[] pageCounts;
+    private Object[] items;
+    private int[] keys;
+    private int targetCap;
+    private int count;
+
+    /**
+     * @param targetCap the target capacity of the dense array
+     * @param pageSize sparse page size. Rounded up to the nearest power of two
+     */
+    public SparseSet(int targetCap, int pageSize) {
+        pageSize = Math.max(pageSize,1);
+        int size = Integer.highestOneBit(pageSize);
+        if (size < pageSize) size <<= 1;
+        this.pageShift = Integer.numberOfTrailingZeros(size);
+        this.pageMask = size - 1;
+        this.targetCap = Math.max(targetCap,1);
+        this.items = new Object[this.targetCap];
+        this.keys = new int[this.targetCap];
+        this.pages = new int[1][];
+        this.pageCounts = new int[1];
+    }
+
+    public SparseSet(int targetCap) {
+        this(targetCap,DEFAULT_PAGE_SIZE);
+    }
+
+    public SparseSet() {
+        this(DEFAULT_CAPACITY,DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Dense iteration
+     * @param itr the iterator
+     */
+    @Override
+    public void iterate(Iterator<E> itr) {
+        for (int i = 0; i < count; i++)
+            itr.next((E) items[i]);
+    }
+
+    @Override
+    public E get(int index) {
+        final int p = index >>> pageShift;
+        if (p >= pages.length) return null;
+        final int[] page = pages[p];
+        if (page == null) return null;
+        final int dense = page[index & pageMask];
+        return dense == NONE ? null : (E) items[dense];
+    }
+
+    public boolean contains(int index) {
+        final int p = index >>> pageShift;
+        if (p >= pages.length) return false;
+        final int[] page = pages[p];
+        return page != null && page[index & pageMask] != NONE;
+    }
+
+    /**
+     * Setting a null item is equivalent to remove(index)
+     * @param item the item
+     * @param index the index
+     */
+    @Override
+    public void set(E item, int index) {
+        if (item == null) {
+            remove(index);
+            return;
+        }
+        final int p = index >>> pageShift;
+        if (p >= pages.length) {
+            final int size = growFormula(p);
+            pages = Arrays.copyOf(pages,size);
+            pageCounts = Arrays.copyOf(pageCounts,size);
+        }
+        int[] page = pages[p];
+        if (page == null) {
+            page = new int[pageMask + 1];
+            Arrays.fill(page,NONE);
+            pages[p] = page;
+        }
+        final int slot = index & pageMask;
+        final int dense = page[slot];
+        if (dense == NONE) {
+            if (count == items.length)
+                resize(growFormula(count));
+            items[count] = item;
+            keys[count] = index;
+            page[slot] = count++;
+            pageCounts[p]++;
+        } else items[dense] = item;
+    }
+
+    @Override
+    public E remove(int index) {
+        final int p = index >>> pageShift;
+        if (p >= pages.length) return null;
+        final int[] page = pages[p];
+        if (page == null) return null;
+        final int slot = index & pageMask;
+        final int dense = page[slot];
+        if (dense == NONE) return null;
+        final Object item = items[dense];
+        final int last = --count;
+        if (dense != last) {
+            final int movedKey = keys[last];
+            items[dense] = items[last];
+            keys[dense] = movedKey;
+            pages[movedKey >>> pageShift][movedKey & pageMask] = dense;
+        }
+        items[last] = null;
+        page[slot] = NONE;
+        if (--pageCounts[p] == 0)
+            pages[p] = null;
+        if (count == 0 && targetCap < items.length) {
+            items = new Object[targetCap];
+            keys = new int[targetCap];
+        }
+        return (E) item;
+    }
+
+    /**
+     * @param denseIndex 0 to count() - 1
+     * @return the item at the dense position
+     */
+    public E getDense(int denseIndex) {
+        return (E) items[denseIndex];
+    }
+
+    /**
+     * @param denseIndex 0 to count() - 1
+     * @return the (sparse) index of the item at the dense position
+     */
+    public int keyAt(int denseIndex) {
+        return keys[denseIndex];
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < count; i++)
+            items[i] = null;
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = null;
+            pageCounts[i] = 0;
+        }count = 0;
+    }
+
+    @Override
+    public void ensureCapacity(int n) {
+        int cap = n + count;
+        if (cap > capacity())
+            resize(cap);
+    }
+
+    /**
+     * Grows the dense arrays for n items, and the page table to cover the bound.
+     * Pages are still allocated when first used.
+     */
+    @Override
+    public void ensureCapacity(int n, int bound) {
+        ensureCapacity(n);
+        final int p = (bound - 1) >>> pageShift;
+        if (bound > 0 && p >= pages.length) {
+            pages = Arrays.copyOf(pages,p + 1);
+            pageCounts = Arrays.copyOf(pageCounts,p + 1);
+        }
+    }
+
+    /**
+     * Shrinks the dense arrays to fit the items (or targetCap),
+     * and the page table down to the last populated page.
+     */
+    @Override
+    public boolean fit(boolean absolute) {
+        boolean fitted = false;
+        int usedPages = pages.length;
+        while (usedPages > 1 && pages[usedPages - 1] == null)
+            usedPages--;
+        if (usedPages < pages.length) {
+            pages = Arrays.copyOf(pages,usedPages);
+            pageCounts = Arrays.copyOf(pageCounts,usedPages);
+            fitted = true;
+        }
+        if (count == capacity()) return fitted;
+        int size = absolute ? Math.max(count,1) : Math.max(count,targetCap);
+        if (size == capacity()) return fitted;
+        resize(size);
+        return true;
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public float loadFactor() {
+        return (float) count / items.length;
+    }
+
+    @Override
+    public int capacity() {
+        return items.length;
+    }
+
+    @Override
+    public int targetCapacity() {
+        return targetCap;
+    }
+
+    @Override
+    public void setTargetCapacity(int cap) {
+        targetCap = Math.max(cap,1);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public boolean notEmpty() {
+        return count > 0;
+    }
+
+    @Override
+    public int usedSpace() {
+        return pages.length << pageShift;
+    }
+
+    public int pageSize() {
+        return pageMask + 1;
+    }
+
+    /**
+     * @return the number of allocated pages
+     */
+    public int pages() {
+        int n = 0;
+        for (int[] page : pages)
+            if (page != null) n++;
+        return n;
+    }
+
+    private void resize(int size) {
+        items = Arrays.copyOf(items,size);
+        keys = Arrays.copyOf(keys,size);
+    }
+}
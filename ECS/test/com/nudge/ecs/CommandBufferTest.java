@@ -0,0 +1,237 @@
+package com.nudge.ecs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Playback order, provisional handles and stale handles of the CommandBuffer.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class CommandBufferTest {
+
+    public static class A implements Component { int value; A(int value) { this.value = value; } }
+    public static class B implements Component { int value; B(int value) { this.value = value; } }
+
+    // The empty group: every entity
+    public static class All extends ECSystem {
+        All(ECS ecs) { super(ecs); }
+        EntityArray entities() { return getEntities(); }
+    }
+
+    private ECS ecs;
+    private All all;
+    private EntityManager entityManager;
+    private Getter<A> aComponents;
+    private Getter<B> bComponents;
+    private ComponentType typeA;
+    private ComponentType typeB;
+
+    @BeforeEach
+    public void setup() {
+        ecs = new ECS(16);
+        typeA = ecs.getType(A.class);
+        typeB = ecs.getType(B.class);
+        all = new All(ecs);
+        ecs.initialize();
+        entityManager = ecs.entityManager();
+        aComponents = ecs.getter(A.class);
+        bComponents = ecs.getter(B.class);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ecs.terminate();
+    }
+
+    private Entity createWithA(int value) {
+        Entity e = entityManager.create();
+        entityManager.addComponent(e,new A(value));
+        entityManager.clean();
+        return e;
+    }
+
+    @Test
+    public void provisionalHandlesResolveToTheCreatedEntities() {
+        CommandBuffer buffer = ecs.commandBuffer(4);
+        final long first = buffer.create();
+        final long second = buffer.create();
+        assertTrue(CommandBuffer.isProvisional(first));
+        assertTrue(CommandBuffer.isProvisional(second));
+        assertNotEquals(first,second);
+        buffer.addComponent(first,new A(1));
+        buffer.addComponent(second,new A(2));
+        buffer.playback();
+        entityManager.clean();
+        assertEquals(2,entityManager.entities());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void appendRemapsProvisionalHandlesAcrossBuffers() {
+        CommandBuffer first = ecs.commandBuffer(4);
+        CommandBuffer second = ecs.commandBuffer(4);
+        final long a = first.create();
+        first.addComponent(a,new A(1));
+        final long b = second.create(); // the same provisional handle as a, in another buffer
+        assertEquals(a,b);
+        second.addComponent(b,new B(2));
+
+        CommandBuffer merged = ecs.commandBuffer(4);
+        merged.append(first);
+        merged.append(second);
+        assertEquals(4,merged.count());
+        assertEquals(2,first.count()); // sources unchanged
+        merged.playback();
+        entityManager.clean();
+
+        assertEquals(2,entityManager.entities());
+        int onlyA = 0, onlyB = 0;
+        final EntityArray entities = all.entities();
+        for (int i = 0; i < entities.count(); i++) {
+            final Entity e = entities.get(i);
+            final boolean hasA = e.hasComponent(typeA);
+            final boolean hasB = e.hasComponent(typeB);
+            if (hasA && !hasB) onlyA++;
+            if (hasB && !hasA) onlyB++;
+        }
+        assertEquals(1,onlyA);
+        assertEquals(1,onlyB);
+    }
+
+    @Test
+    public void appendAfterOwnCreatesKeepsOwnHandles() {
+        CommandBuffer dst = ecs.commandBuffer(4);
+        final long own = dst.create();
+        dst.addComponent(own,new A(7));
+        CommandBuffer src = ecs.commandBuffer(4);
+        final long other = src.create();
+        src.addComponent(other,new B(8));
+        dst.append(src);
+        dst.playback();
+        entityManager.clean();
+        assertEquals(2,entityManager.entities());
+        int a = 0, b = 0;
+        final EntityArray entities = all.entities();
+        for (int i = 0; i < entities.count(); i++) {
+            final Entity e = entities.get(i);
+            if (e.hasComponent(typeA)) { a++; assertEquals(7,aComponents.get(e).value); assertFalse(e.hasComponent(typeB)); }
+            if (e.hasComponent(typeB)) { b++; assertEquals(8,bComponents.get(e).value); }
+        }
+        assertEquals(1,a);
+        assertEquals(1,b);
+    }
+
+    @Test
+    public void destroyWinsOverCommandsRecordedAfterIt() {
+        Entity e = createWithA(1);
+        final long handle = entityManager.handle(e);
+        CommandBuffer buffer = ecs.commandBuffer(4);
+        buffer.destroy(handle);
+        buffer.addComponent(handle,new B(2));
+        buffer.enable(handle);
+        buffer.playback();
+        entityManager.clean();
+        assertFalse(entityManager.isAlive(handle));
+        assertEquals(0,entityManager.entities());
+    }
+
+    @Test
+    public void destroyOfProvisionalEntityDeletesIt() {
+        CommandBuffer buffer = ecs.commandBuffer(4);
+        final long handle = buffer.create();
+        buffer.destroy(handle);
+        buffer.addComponent(handle,new A(1));
+        buffer.playback();
+        entityManager.clean();
+        assertEquals(0,entityManager.entities());
+    }
+
+    @Test
+    public void commandsOfOneTypeApplyInRecordingOrder() {
+        Entity e = createWithA(0);
+        CommandBuffer buffer = ecs.commandBuffer(4);
+        buffer.addComponent(e,new A(1));
+        buffer.addComponent(e,new B(5));
+        buffer.addComponent(e,new A(2)); // replaces A(1)
+        buffer.removeComponent(e,typeB);
+        buffer.playback();
+        entityManager.clean();
+        assertEquals(2,aComponents.get(e).value);
+        assertFalse(e.hasComponent(typeB));
+
+        buffer.removeComponent(e,typeB);
+        buffer.addComponent(e,new B(6)); // remove, then add: present
+        buffer.playback();
+        entityManager.clean();
+        assertTrue(e.hasComponent(typeB));
+        assertEquals(6,bComponents.get(e).value);
+    }
+
+    @Test
+    public void componentCommandsApplyBeforeStateCommands() {
+        Entity e = createWithA(0);
+        CommandBuffer buffer = ecs.commandBuffer(4);
+        buffer.disable(e);
+        buffer.addComponent(e,new B(1));
+        buffer.enable(e); // state commands in recording order: enabled
+        buffer.playback();
+        entityManager.clean();
+        assertTrue(e.isEnabled());
+        assertTrue(e.hasComponent(typeB));
+    }
+
+    @Test
+    public void commandsOnEntitiesDeletedBeforePlaybackAreSkipped() {
+        Entity e = createWithA(1);
+        final long stale = entityManager.handle(e);
+        CommandBuffer buffer = ecs.commandBuffer(4);
+        buffer.addComponent(stale,new B(2));
+        buffer.removeComponent(stale,typeA);
+        buffer.disable(stale);
+        buffer.destroy(stale);
+
+        entityManager.remove(e);
+        entityManager.clean();
+        assertFalse(entityManager.isAlive(stale));
+        Entity reused = createWithA(3); // may reuse the id, with a new generation
+        buffer.playback();
+        entityManager.clean();
+
+        assertEquals(1,entityManager.entities());
+        assertTrue(reused.isEnabled());
+        assertTrue(reused.hasComponent(typeA));
+        assertFalse(reused.hasComponent(typeB));
+        assertEquals(3,aComponents.get(reused).value);
+    }
+
+    @Test
+    public void clearDiscardsCommandsAndProvisionalHandles() {
+        CommandBuffer buffer = ecs.commandBuffer(4);
+        final long handle = buffer.create();
+        buffer.addComponent(handle,new A(1));
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        buffer.addComponent(handle,new A(2)); // the create was cleared: nothing to resolve
+        buffer.playback();
+        entityManager.clean();
+        assertEquals(0,entityManager.entities());
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        CommandBuffer buffer = ecs.commandBuffer(1);
+        for (int i = 0; i < 100; i++)
+            buffer.addComponent(buffer.create(),new A(i));
+        assertEquals(200,buffer.count());
+        buffer.playback();
+        entityManager.clean();
+        assertEquals(100,entityManager.entities());
+    }
+}
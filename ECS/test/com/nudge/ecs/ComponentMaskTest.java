@@ -0,0 +1,154 @@
+package com.nudge.ecs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ComponentMask at the edges of the first word (63 / 64) and of the additional words (127 / 128),
+ * and between masks of different widths.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class ComponentMaskTest {
+
+    private static final int[] EDGES = {0, 62, 63, 64, 65, 127, 128, 191, 192};
+
+    private static ComponentMask mask(int width, int... bits) {
+        ComponentMask mask = new ComponentMask(width);
+        for (int bit : bits) mask.set(bit);
+        return mask;
+    }
+
+    @Test
+    public void getSeesOnlyTheBitThatWasSet() {
+        for (int bit : EDGES) {
+            ComponentMask mask = mask(4,bit);
+            for (int other : EDGES)
+                assertEquals(other == bit,mask.get(other),"set " + bit + ", get " + other);
+            assertEquals(1,mask.cardinality());
+        }
+    }
+
+    @Test
+    public void getPastTheWidthIsFalse() {
+        ComponentMask mask = mask(1,63);
+        assertEquals(1,mask.width());
+        assertFalse(mask.get(64));
+        assertFalse(mask.get(127));
+        assertFalse(mask.get(1000));
+    }
+
+    @Test
+    public void setPastTheWidthGrows() {
+        ComponentMask mask = mask(1);
+        mask.set(64);
+        assertEquals(2,mask.width());
+        assertTrue(mask.get(64));
+        assertFalse(mask.get(0)); // same bit position in the first word
+        mask.set(128);
+        assertEquals(3,mask.width());
+        assertTrue(mask.get(128));
+        assertEquals(2,mask.cardinality());
+    }
+
+    @Test
+    public void containsAllAcrossTheWordEdge() {
+        ComponentMask mask = mask(3,63,64,128);
+        assertTrue(mask.containsAll(mask(3,63)));
+        assertTrue(mask.containsAll(mask(3,64)));
+        assertTrue(mask.containsAll(mask(3,63,64,128)));
+        assertFalse(mask.containsAll(mask(3,63,65)));
+        assertFalse(mask.containsAll(mask(3,127)));
+        assertFalse(mask(1,0,63).containsAll(mask(2,64)));
+        assertTrue(mask.containsAll(mask(1)));
+        assertTrue(mask.containsAll(mask(5))); // zero-words past the width
+        assertTrue(mask(1,63).containsAll(mask(3,63)));
+    }
+
+    @Test
+    public void intersectsAcrossTheWordEdge() {
+        ComponentMask mask = mask(3,63,128);
+        assertTrue(mask.intersects(mask(3,63)));
+        assertTrue(mask.intersects(mask(3,128)));
+        assertTrue(mask.intersects(mask(1,0,63)));
+        assertFalse(mask.intersects(mask(3,62,64,127,129)));
+        assertFalse(mask.intersects(mask(1)));
+        assertFalse(mask(1,63).intersects(mask(2,64)));
+        assertFalse(mask(2,64).intersects(mask(1,0)));   // bit 64 and bit 0 share the position in their words
+        assertFalse(mask(3,128).intersects(mask(2,64))); // and so do 64 and 128
+        assertTrue(mask(2,64).intersects(mask(4,64,192)));
+    }
+
+    @Test
+    public void clearAtTheWordEdge() {
+        ComponentMask mask = mask(3,63,64,127,128);
+        mask.clear(64);
+        assertTrue(mask.get(63));
+        assertFalse(mask.get(64));
+        assertTrue(mask.get(127));
+        mask.clear(63);
+        assertFalse(mask.get(63));
+        assertTrue(mask.get(127));
+        assertTrue(mask.get(128));
+        mask.clear(128);
+        assertFalse(mask.get(128));
+        assertEquals(1,mask.cardinality());
+        mask.clear(1000); // past the width: no-op
+        assertEquals(3,mask.width());
+        mask.clear();
+        assertTrue(mask.isEmpty());
+        assertEquals(3,mask.width());
+    }
+
+    @Test
+    public void nextSetBitCrossesWords() {
+        ComponentMask mask = mask(4,63,64,128,191);
+        assertEquals(63,mask.nextSetBit(0));
+        assertEquals(63,mask.nextSetBit(63));
+        assertEquals(64,mask.nextSetBit(64));
+        assertEquals(128,mask.nextSetBit(65));
+        assertEquals(128,mask.nextSetBit(128));
+        assertEquals(191,mask.nextSetBit(129));
+        assertEquals(-1,mask.nextSetBit(192));
+        assertEquals(-1,mask.nextSetBit(1000));
+        assertEquals(128,mask(3,128).nextSetBit(0)); // skips an empty word
+        assertEquals(-1,mask(3).nextSetBit(0));
+        int count = 0;
+        for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1))
+            count++;
+        assertEquals(mask.cardinality(),count);
+    }
+
+    @Test
+    public void equalsIgnoresTrailingZeroWords() {
+        assertEquals(mask(1,63),mask(4,63));
+        assertEquals(mask(1,63).hashCode(),mask(4,63).hashCode());
+        assertNotEquals(mask(1,0),mask(2,64));
+        assertNotEquals(mask(2,64),mask(3,128));
+        ComponentMask mask = mask(3,64,128);
+        mask.clear(128);
+        assertEquals(mask(2,64),mask);
+        assertEquals(mask(2,64).hashCode(),mask.hashCode());
+    }
+
+    @Test
+    public void setAndOrAcrossWidths() {
+        ComponentMask wide = mask(3,1,64,128);
+        ComponentMask narrow = mask(1,63);
+        narrow.set(wide);
+        assertEquals(wide,narrow);
+        assertFalse(narrow.get(63));
+        wide.set(mask(1,2)); // the words of wide are zeroed
+        assertEquals(mask(1,2),wide);
+        narrow.or(mask(4,63,192));
+        assertEquals(mask(4,1,63,64,128,192),narrow);
+        ComponentMask copy = narrow.copy();
+        assertEquals(narrow,copy);
+        copy.clear(192);
+        assertTrue(narrow.get(192));
+    }
+}
@@ -0,0 +1,126 @@
+package com.nudge.ecs;
+
+import com.nudge.ecs.util.exceptions.EmptyCollectionException;
+import com.nudge.ecs.util.exceptions.ItemNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EntityArray at the edge of its sparse index (ids past its length) and the remove-swap.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class EntityArrayTest {
+
+    private static final int CAP = 4;
+
+    private ECS ecs;
+    private Entity[] entities; // entities[i].id() == i
+
+    @BeforeEach
+    public void setup() {
+        ecs = new ECS(16);
+        ecs.initialize();
+        entities = new Entity[3 * CAP];
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = ecs.entityManager().create();
+            assertEquals(i,entities[i].id());
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ecs.terminate();
+    }
+
+    @Test
+    public void idsOnEachSideOfTheSparseEdge() {
+        EntityArray array = new EntityArray(CAP);
+        array.add(entities[CAP - 1]);
+        assertTrue(array.contains(entities[CAP - 1]));
+        assertFalse(array.contains(entities[CAP])); // past the sparse index
+        assertEquals(-1,array.getIndex(entities[CAP]));
+        array.add(entities[CAP]); // grows the sparse index
+        assertTrue(array.contains(entities[CAP]));
+        assertEquals(0,array.getIndex(entities[CAP - 1]));
+        assertEquals(1,array.getIndex(entities[CAP]));
+        assertFalse(array.contains(entities[3 * CAP - 1]));
+        assertEquals(-1,array.getIndex(entities[3 * CAP - 1]));
+        assertFalse(array.contains(null));
+    }
+
+    @Test
+    public void addIsIdempotent() {
+        EntityArray array = new EntityArray(CAP);
+        array.add(entities[CAP]);
+        array.add(entities[CAP]);
+        array.add(entities[0]);
+        array.add(entities[0]);
+        assertEquals(2,array.count());
+    }
+
+    @Test
+    public void removeSwapsTheLastEntityIntoTheHole() {
+        EntityArray array = new EntityArray(CAP);
+        array.add(entities[0]);
+        array.add(entities[CAP]);
+        array.add(entities[2 * CAP]);
+        array.remove(entities[0]);
+        assertEquals(2,array.count());
+        assertSame(entities[2 * CAP],array.get(0));
+        assertEquals(0,array.getIndex(entities[2 * CAP])); // its index followed it
+        assertEquals(1,array.getIndex(entities[CAP]));
+        assertFalse(array.contains(entities[0]));
+        assertEquals(-1,array.getIndex(entities[0]));
+        assertSame(entities[CAP],array.remove(1)); // the last: nothing to swap
+        assertSame(entities[2 * CAP],array.get(0));
+        assertEquals(0,array.getIndex(entities[2 * CAP]));
+        array.remove(entities[2 * CAP]);
+        assertTrue(array.isEmpty());
+    }
+
+    @Test
+    public void removeThrowsWhenEmptyOrAbsent() {
+        EntityArray array = new EntityArray(CAP);
+        assertThrows(EmptyCollectionException.class,() -> array.remove(entities[0]));
+        array.add(entities[0]);
+        assertThrows(ItemNotFoundException.class,() -> array.remove(entities[CAP - 1]));
+        assertThrows(ItemNotFoundException.class,() -> array.remove(entities[3 * CAP - 1]));
+        assertEquals(1,array.count());
+    }
+
+    @Test
+    public void itemsGrowPastTheTargetAndShrinkBackWhenEmptied() {
+        EntityArray array = new EntityArray(CAP);
+        for (Entity e : entities) array.add(e);
+        assertEquals(entities.length,array.count());
+        assertTrue(array.capacity() >= entities.length);
+        for (Entity e : entities) assertEquals(e.id(),array.getIndex(e));
+        for (int i = entities.length - 1; i >= 0; i--)
+            array.remove(entities[i]);
+        assertEquals(CAP,array.capacity());
+    }
+
+    @Test
+    public void clearResetsTheSparseIndex() {
+        EntityArray array = new EntityArray(CAP);
+        array.add(entities[CAP - 1]);
+        array.add(entities[CAP]);
+        array.clear();
+        assertTrue(array.isEmpty());
+        assertFalse(array.contains(entities[CAP - 1]));
+        assertFalse(array.contains(entities[CAP]));
+        array.add(entities[CAP]);
+        assertEquals(0,array.getIndex(entities[CAP]));
+        array.free();
+        assertFalse(array.contains(entities[CAP]));
+        array.add(entities[CAP]); // usable after free
+        assertTrue(array.contains(entities[CAP]));
+    }
+}
@@ -0,0 +1,163 @@
+package com.nudge.ecs.util.containers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SparseSet at the page edges (pageSize - 1 / pageSize), page release and the remove-swap.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class SparseSetTest {
+
+    private static final int PAGE = 8;
+
+    @Test
+    public void pageSizeRoundsUpToPowerOfTwo() {
+        assertEquals(8,new SparseSet<String>(4,5).pageSize());
+        assertEquals(8,new SparseSet<String>(4,8).pageSize());
+        assertEquals(1,new SparseSet<String>(4,0).pageSize());
+        assertEquals(SparseSet.DEFAULT_PAGE_SIZE,new SparseSet<String>().pageSize());
+    }
+
+    @Test
+    public void indicesOnEachSideOfThePageEdge() {
+        SparseSet<String> set = new SparseSet<>(4,PAGE);
+        set.set("last",PAGE - 1);
+        assertEquals(1,set.pages());
+        assertTrue(set.contains(PAGE - 1));
+        assertFalse(set.contains(PAGE));
+        assertNull(set.get(PAGE));
+        set.set("first",PAGE);
+        assertEquals(2,set.pages());
+        assertEquals("last",set.get(PAGE - 1));
+        assertEquals("first",set.get(PAGE));
+        assertFalse(set.contains(0));
+        assertFalse(set.contains(2 * PAGE - 1));
+        assertFalse(set.contains(2 * PAGE));
+        assertFalse(set.contains(1000)); // past the page table
+        assertNull(set.get(1000));
+        assertNull(set.remove(1000));
+        assertEquals(2,set.count());
+    }
+
+    @Test
+    public void unpopulatedPagesAreNotAllocated() {
+        SparseSet<String> set = new SparseSet<>(4,PAGE);
+        set.set("far",10 * PAGE);
+        assertEquals(1,set.pages());
+        assertTrue(set.usedSpace() >= 11 * PAGE); // the page table covers the index
+        assertFalse(set.contains(5 * PAGE));
+        assertNull(set.remove(5 * PAGE));
+    }
+
+    @Test
+    public void pageIsReleasedWithItsLastItem() {
+        SparseSet<String> set = new SparseSet<>(4,PAGE);
+        set.set("a",PAGE - 1);
+        set.set("b",PAGE);
+        set.set("c",PAGE + 1);
+        assertEquals(2,set.pages());
+        assertEquals("b",set.remove(PAGE));
+        assertEquals(2,set.pages());
+        assertEquals("c",set.remove(PAGE + 1));
+        assertEquals(1,set.pages());
+        assertEquals("a",set.get(PAGE - 1));
+        assertFalse(set.contains(PAGE));
+        set.set("b",PAGE); // the page is allocated again
+        assertEquals(2,set.pages());
+        assertEquals("b",set.get(PAGE));
+        assertEquals("a",set.remove(PAGE - 1));
+        assertEquals(1,set.pages());
+        assertEquals("b",set.get(PAGE));
+    }
+
+    @Test
+    public void removeSwapsTheLastItemIntoTheHole() {
+        SparseSet<String> set = new SparseSet<>(4,PAGE);
+        set.set("a",PAGE - 1);
+        set.set("b",PAGE);
+        set.set("c",3 * PAGE);
+        assertEquals("a",set.remove(PAGE - 1));
+        assertEquals(2,set.count());
+        assertEquals("c",set.getDense(0)); // the last item moved to the hole
+        assertEquals(3 * PAGE,set.keyAt(0));
+        assertEquals("b",set.getDense(1));
+        assertEquals(PAGE,set.keyAt(1));
+        assertEquals("c",set.get(3 * PAGE)); // its sparse entry followed it
+        assertEquals("c",set.remove(3 * PAGE));
+        assertEquals("b",set.getDense(0));
+        assertEquals("b",set.remove(PAGE));
+        assertTrue(set.isEmpty());
+        assertEquals(0,set.pages());
+    }
+
+    @Test
+    public void removeOfTheLastDenseItemSwapsNothing() {
+        SparseSet<String> set = new SparseSet<>(4,PAGE);
+        set.set("a",0);
+        set.set("b",PAGE);
+        assertEquals("b",set.remove(PAGE));
+        assertEquals("a",set.getDense(0));
+        assertEquals(0,set.keyAt(0));
+        assertEquals("a",set.get(0));
+    }
+
+    @Test
+    public void setReplacesAndNullRemoves() {
+        SparseSet<String> set = new SparseSet<>(4,PAGE);
+        set.set("a",PAGE);
+        set.set("b",PAGE);
+        assertEquals(1,set.count());
+        assertEquals("b",set.get(PAGE));
+        set.set(null,PAGE);
+        assertTrue(set.isEmpty());
+        assertEquals(0,set.pages());
+    }
+
+    @Test
+    public void denseArraysGrowAcrossManyPages() {
+        SparseSet<Integer> set = new SparseSet<>(1,PAGE);
+        final int n = 10 * PAGE;
+        for (int i = 0; i < n; i += 3) set.set(i,i);
+        assertEquals(10,set.pages());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i % 3 == 0,set.contains(i),"index " + i);
+            if (i % 3 == 0) assertEquals(i,(int) set.get(i));
+        }
+        for (int i = 0; i < set.count(); i++)
+            assertEquals(set.keyAt(i),(int) set.getDense(i));
+    }
+
+    @Test
+    public void clearReleasesAllPages() {
+        SparseSet<String> set = new SparseSet<>(4,PAGE);
+        set.set("a",PAGE - 1);
+        set.set("b",PAGE);
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertEquals(0,set.pages());
+        assertFalse(set.contains(PAGE - 1));
+        assertFalse(set.contains(PAGE));
+        set.set("c",PAGE);
+        assertEquals(1,set.count());
+        assertEquals("c",set.getDense(0));
+    }
+
+    @Test
+    public void fitTrimsTrailingEmptyPages() {
+        SparseSet<String> set = new SparseSet<>(4,PAGE);
+        set.set("a",0);
+        set.set("b",5 * PAGE);
+        set.remove(5 * PAGE);
+        assertTrue(set.usedSpace() >= 6 * PAGE);
+        assertTrue(set.fit(false));
+        assertEquals(PAGE,set.usedSpace());
+        assertEquals("a",set.get(0));
+        assertFalse(set.contains(5 * PAGE));
+    }
+}
@@ -0,0 +1,198 @@
+package com.nudge.ecs.gdx;
+
+import com.nudge.ecs.ECS;
+import com.nudge.ecs.ECSystem;
+import com.nudge.ecs.EntityManager;
+import com.nudge.ecs.gdx.components.Dying;
+import com.nudge.ecs.gdx.systems.CollisionSystem;
+import com.nudge.ecs.gdx.systems.DyingSystem;
+import com.nudge.ecs.gdx.systems.MovementSystem;
+import com.nudge.ecs.util.TableFormatter;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * The virus simulation without a display. Same systems as the Simulation, minus the Renderer.
+ * A fixed world size and time step, and a seeded random. Runs a number of ticks and reports
+ * ticks / sec, the time spent in each system and the allocation rate (all threads).
+ *
+ *     Headless --ticks 2000 --vulnerable 30000 --infected 10 --infection-rate 0.5
+ *
+ * Options (with defaults):
+ *
+ * --ticks 1000             measured ticks
+ * --warmup 200             ticks before measuring (not reported)
+ * --dt 0.016667            time step in seconds
+ * --width 1280             world width
+ * --height 720             world height
+ * --vulnerable 15000       vulnerable bodies
+ * --immune 0               immune bodies
+ * --infected 10            infected bodies introduced at random positions
+ * --infection-rate 1       chance of infection on contact
+ * --seed 1                 seed of the random
+ * --broad-phase grid       grid, quadtree or sweep_and_prune
+ * --collision-threads 0    parallel collision workers on threads of their own (grid only). 0 is serial
+ *
+ * Needs the gdx jar on the class path. (For the math classes, no natives)
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class Headless {
+
+    private int ticks = 1000;
+    private int warmup = 200;
+    private float dt = 1 / 60f;
+    private float width = 1280;
+    private float height = 720;
+    private int vulnerable = 15000;
+    private int immune = 0;
+    private int infected = 10;
+    private float infectionRate = 1;
+    private long seed = 1;
+    private CollisionSystem.BroadPhase broadPhase = CollisionSystem.BroadPhase.GRID;
+    private int collisionThreads = 0;
+
+    public static void main(String[] args) {
+        new Headless(args).run();
+    }
+
+    public Headless(String... args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) throw new IllegalArgumentException("Missing value for: " + args[i]);
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "--ticks": ticks = Integer.parseInt(value); break;
+                case "--warmup": warmup = Integer.parseInt(value); break;
+                case "--dt": dt = Float.parseFloat(value); break;
+                case "--width": width = Float.parseFloat(value); break;
+                case "--height": height = Float.parseFloat(value); break;
+                case "--vulnerable": vulnerable = Integer.parseInt(value); break;
+                case "--immune": immune = Integer.parseInt(value); break;
+                case "--infected": infected = Integer.parseInt(value); break;
+                case "--infection-rate": infectionRate = Float.parseFloat(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--broad-phase": broadPhase = CollisionSystem.BroadPhase.valueOf(value.toUpperCase()); break;
+                case "--collision-threads": collisionThreads = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (ticks < 1 || warmup < 0 || dt <= 0 || collisionThreads < 0)
+            throw new IllegalArgumentException("ticks >= 1, warmup >= 0, dt > 0 and collision threads >= 0");
+    }
+
+    public void run() {
+
+        final int initialCap = 1000;
+        final Random rnd = new Random(seed);
+
+        ECS ecs = new ECS(initialCap);
+        World world = new World(width,height);
+        Lab lab = new Lab(ecs,world,rnd);
+        ecs.useSparseStorage(Dying.class);
+
+        CollisionSystem collisionSystem = new CollisionSystem(ecs,initialCap,world,rnd);
+        collisionSystem.setInfectionRate(infectionRate);
+        collisionSystem.setBroadPhase(broadPhase);
+        if (collisionThreads > 0)
+            collisionSystem.setParallelCollision(collisionThreads);
+        ECSystem[] systems = {
+                new DyingSystem(ecs,initialCap),
+                collisionSystem,
+                new MovementSystem(ecs,initialCap)
+        };
+        for (ECSystem system : systems)
+            ecs.scheduler().add(system);
+        ecs.initialize();
+
+        if (vulnerable > 0) lab.createVulnerable(vulnerable);
+        if (immune > 0) lab.createImmune(immune);
+        for (int i = 0; i < infected; i++)
+            lab.introduceVirus();
+
+        for (int i = 0; i < warmup; i++)
+            ecs.scheduler().process(dt);
+
+        final EntityManager entityManager = ecs.entityManager();
+        final long deletedBefore = entityManager.entitiesDeleted();
+        final long[] systemNanos = new long[systems.length];
+        final long gcCountBefore = gcCount();
+        final long gcTimeBefore = gcTime();
+        final long allocatedBefore = Allocation.allocatedBytes();
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < ticks; i++) {
+            ecs.scheduler().process(dt);
+            for (int s = 0; s < systems.length; s++)
+                systemNanos[s] += systems[s].lastProcessNanos();
+        }
+
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = Allocation.allocatedBytes() - allocatedBefore;
+        final double seconds = elapsed / 1e9;
+
+        System.out.printf("world %.0f x %.0f, dt %.4f, seed %d, infection rate %.2f, %s, collision threads %d%n", width, height, dt, seed, infectionRate, broadPhase, collisionThreads);
+        System.out.printf("bodies: %d vulnerable, %d immune, %d infected%n", vulnerable, immune, infected);
+        System.out.printf("ticks: %d (+%d warmup) in %.3f s%n", ticks, warmup, seconds);
+        System.out.printf("ticks/sec: %.1f%n", ticks / seconds);
+        System.out.printf("entities: %d alive, %d died%n", entityManager.entities(), entityManager.entitiesDeleted() - deletedBefore);
+        if (allocatedBefore >= 0) {
+            System.out.printf("allocated: %.1f MB/s, %d bytes/tick%n", allocated / seconds / (1024 * 1024), allocated / ticks);
+        } else System.out.println("allocated: n/a (thread allocation counters not supported)");
+        System.out.printf("gc: %d collections, %d ms%n", gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+
+        TableFormatter table = new TableFormatter(4);
+        table.insert("system", "total ms", "avg us/tick", "% of tick");
+        for (int s = 0; s < systems.length; s++) {
+            table.insert(
+                    systems[s].getClass().getSimpleName(),
+                    String.format("%.1f", systemNanos[s] / 1e6),
+                    String.format("%.1f", systemNanos[s] / 1e3 / ticks),
+                    String.format("%.1f", 100.0 * systemNanos[s] / elapsed));
+        } System.out.println(table);
+
+        ecs.terminate();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0,bean.getCollectionCount());
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(0,bean.getCollectionTime());
+        return time;
+    }
+
+    // The per-thread allocation counters of HotSpot. Threads that die in between are not counted
+    private static final class Allocation {
+
+        private static final com.sun.management.ThreadMXBean threads = bean();
+
+        private static com.sun.management.ThreadMXBean bean() {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (!threads.isThreadAllocatedMemorySupported()) return null;
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        }
+
+        // -1 if not supported
+        static long allocatedBytes() {
+            if (threads == null) return -1;
+            long sum = 0;
+            for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+                if (bytes > 0) sum += bytes;
+            return sum;
+        }
+    }
+}
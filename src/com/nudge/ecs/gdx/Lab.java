@@ -1,10 +1,11 @@
 package com.nudge.ecs.gdx;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
+import com.nudge.ecs.ECS;
 import com.nudge.ecs.Entity;
 import com.nudge.ecs.EntityManager;
+import com.nudge.ecs.Template;
 import com.nudge.ecs.gdx.components.Body;
 import com.nudge.ecs.gdx.components.Collider;
 import com.nudge.ecs.gdx.components.Dying;
@@ -21,18 +22,35 @@ import java.util.Random;
 public class Lab {
 
      private final EntityManager manager;
+     private final World world;
+     private final Template healthy;
+     private final int BODY, COLLIDER, VELOCITY;
      private final Random rnd;
 
      private final float speed = 50.0f;
      private final int maxRadius = 4;
      public final static int TIME_TO_DIE = 6;
 
-     public Lab(EntityManager entityManager){
-          this.manager = entityManager;
-          this.rnd = new Random();
+     public Lab(ECS ecs, World world) {
+          this(ecs,world,new Random());
      }
 
-     public void introduceVirus(int x, int y) {
+     public Lab(ECS ecs, World world, Random rnd){
+          this.manager = ecs.entityManager();
+          this.world = world;
+          this.healthy = ecs.template(Body.class, Collider.class, Velocity.class);
+          this.BODY = healthy.slot(Body.class);
+          this.COLLIDER = healthy.slot(Collider.class);
+          this.VELOCITY = healthy.slot(Velocity.class);
+          this.rnd = rnd;
+     }
+
+     public void introduceVirus() {
+          Vector2 position = rngPos();
+          introduceVirus(position.x,position.y);
+     }
+
+     public void introduceVirus(float x, float y) {
           Entity e = manager.create();
           Body body = new Body(new Vector2(x,y), rngRadius(),true,true);
           Velocity velocity = new Velocity(rnd.nextFloat(), speed);
@@ -40,23 +58,19 @@ public class Lab {
      }
 
      public void createVulnerable(int amount) {
-          amount = Math.max(1,amount);
-          for (int i = 0; i < amount; i++) {
-               Entity e = manager.create();
-               Body body = new Body(rngPos(), rngRadius(),true,false);
-               Velocity velocity = new Velocity(rnd.nextFloat(), speed);
-               manager.addComponents(e, body, new Collider(), velocity);
-          }
+          createHealthy(Math.max(1,amount),true);
      }
 
      public void createImmune(int amount) {
-          amount = Math.max(1,amount);
-          for (int i = 0; i < amount; i++) {
-               Entity e = manager.create();
-               Body body = new Body(rngPos(), rngRadius(),false,false);
-               Velocity velocity = new Velocity(rnd.nextFloat(), speed);
-               manager.addComponents(e, body, new Collider(), velocity);
-          }
+          createHealthy(Math.max(1,amount),false);
+     }
+
+     private void createHealthy(int amount, boolean vulnerable) {
+          manager.createBatch(healthy, amount, (e, i, components) -> {
+               components[BODY] = new Body(rngPos(), rngRadius(),vulnerable,false);
+               components[COLLIDER] = new Collider();
+               components[VELOCITY] = new Velocity(rnd.nextFloat(), speed);
+          });
      }
 
      private Vector2 rngDir() {
@@ -65,12 +79,10 @@ public class Lab {
      }
 
      private float rngRadius() {
-          return Math.max(MathUtils.random(maxRadius),1);
+          return Math.max(rnd.nextInt(maxRadius + 1),1);
      }
 
      public Vector2 rngPos() {
-          int w = Gdx.graphics.getWidth();
-          int h = Gdx.graphics.getHeight();
-          return new Vector2(MathUtils.random(0,w),MathUtils.random(0,h));
+          return new Vector2(rnd.nextFloat() * world.width(),rnd.nextFloat() * world.height());
      }
 }
@@ -6,6 +6,7 @@ import com.badlogic.gdx.Input;
 import com.badlogic.gdx.InputAdapter;
 import com.nudge.ecs.ECS;
 import com.nudge.ecs.ECSystem;
+import com.nudge.ecs.gdx.components.Dying;
 import com.nudge.ecs.gdx.systems.CollisionSystem;
 import com.nudge.ecs.gdx.systems.DyingSystem;
 import com.nudge.ecs.gdx.systems.MovementSystem;
@@ -25,6 +26,7 @@ public class Simulation extends InputAdapter {
     // -------------------------------------------------------
     ECS ecs;                                               //|
     Lab lab;                                               //|
+    World world;                                           //|
     // --------------------- Systems -------------------------
     ECSystem renderer;                                     //|
     ECSystem collisionSystem;                              //|
@@ -38,14 +40,22 @@ public class Simulation extends InputAdapter {
 
         // Setting up the ECS and creating the "lab"
         ecs = new ECS(initialCap);
-        lab = new Lab(ecs.entityManager());
+        world = new World(Gdx.graphics.getWidth(),Gdx.graphics.getHeight());
+        lab = new Lab(ecs,world);
+        // Few entities are dying at any time
+        ecs.useSparseStorage(Dying.class);
 
         // Creating our systems
         movementSystem = new MovementSystem(ecs,initialCap);
-        collisionSystem = new CollisionSystem(ecs,initialCap);
+        collisionSystem = new CollisionSystem(ecs,initialCap,world);
         dyingSystem = new DyingSystem(ecs,initialCap);
         renderer = new Renderer(ecs,initialCap);
 
+        // Scheduling the update systems. (In serial order)
+        ecs.scheduler().add(dyingSystem);
+        ecs.scheduler().add(collisionSystem);
+        ecs.scheduler().add(movementSystem);
+
         // Initialize the ECS
         ecs.initialize();
         // creating our entities in the lab
@@ -57,9 +67,9 @@ public class Simulation extends InputAdapter {
     // Processing our systems
     public void update(float dt) {
         Gdx.graphics.setTitle("FPS: "+(int)(1/dt));
-        dyingSystem.process(dt);
-        collisionSystem.process();
-        movementSystem.process(dt);
+        if (Gdx.graphics.getWidth() > 0 && Gdx.graphics.getHeight() > 0) // minimized
+            world.set(Gdx.graphics.getWidth(),Gdx.graphics.getHeight());
+        ecs.scheduler().process(dt);
         ecs.capacityControl(dt); //
     }
 
@@ -0,0 +1,35 @@
+package com.nudge.ecs.gdx;
+
+/**
+ * The bounds of the simulation. Entities leaving the world re-enter on the opposite side.
+ * The windowed Simulation keeps it in sync with the screen. Headless uses a fixed size.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class World {
+
+    private float width;
+    private float height;
+
+    public World(float width, float height) {
+        set(width,height);
+    }
+
+    public void set(float width, float height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("World size: " + width + " x " + height);
+        this.width = width;
+        this.height = height;
+    }
+
+    public float width() {
+        return width;
+    }
+
+    public float height() {
+        return height;
+    }
+}
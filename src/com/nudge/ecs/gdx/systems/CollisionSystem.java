@@ -1,20 +1,29 @@
 package com.nudge.ecs.gdx.systems;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.math.Circle;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.Array;
 import com.nudge.ecs.ECS;
 import com.nudge.ecs.ECSystem;
 import com.nudge.ecs.Entity;
+import com.nudge.ecs.EntityArray;
 import com.nudge.ecs.Getter;
+import com.nudge.ecs.gdx.World;
 import com.nudge.ecs.gdx.components.Body;
 import com.nudge.ecs.gdx.components.Collider;
 import com.nudge.ecs.gdx.components.Dying;
 import com.nudge.ecs.gdx.components.Velocity;
 import com.nudge.ecs.gdx.util.Point;
 import com.nudge.ecs.gdx.util.QuadTree;
-import com.nudge.ecs.util.containers.Iterator;
+import com.nudge.ecs.gdx.util.SpatialGrid;
+import com.nudge.ecs.gdx.util.SweepAndPrune;
+import com.nudge.ecs.util.Countdown;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Frederik Dahl
@@ -24,103 +33,308 @@ import com.nudge.ecs.util.containers.Iterator;
 
 public class CollisionSystem extends ECSystem {
 
+    private static final float CELL_SIZE = 8; // 2 * Lab max radius
+
+    public enum BroadPhase { GRID, QUADTREE, SWEEP_AND_PRUNE }
+
+    private BroadPhase broadPhase = BroadPhase.GRID;
+    private final SpatialGrid grid;
     private QuadTree<Entity> quadTree;
-    private final Array<Entity> queried;
+    private Point<Entity>[] points; // by entity id
+    private Array<Entity> treeQueried;
+    private SweepAndPrune sweepAndPrune;
+    private Entity[] byId;
+    private float treeWidth, treeHeight;
+    private final Circle collisionRange = new Circle();
+    private final World world;
+    private final Random rnd;
+    private float infectionRate = 1;
+    private float maxRadius;
+    private int[] queried = new int[64];
+    private Executor executor;
+    private ExecutorService ownExecutor; // of setParallelCollision(int)
+    private Worker[] workers; // parallel collision
+    private int used;
+    private final Countdown latch = new Countdown();
+    private volatile Throwable failure;
+    private boolean collided; // in begin()
     private final Getter<Body> bodyComponents;
     private final Getter<Velocity> velocityComponents;
-    private final Circle collisionRange = new Circle();
     private final Vector2 tmp = new Vector2();
 
-    private final Iterator<Entity> quadTreeInsert = new Iterator<>() {
-        @Override
-        public void next(Entity e) {
-            Body b = bodyComponents.getUnsafe(e);
-            quadTree.insert(new Point<>(
-                    b.position.x,
-                    b.position.y,
-                    b.radius,
-                    e
-            ));
-        }
-    };
-
-    public CollisionSystem(ECS ecs, int cap){
+    public CollisionSystem(ECS ecs, int cap, World world) {
+        this(ecs,cap,world,new Random());
+    }
+
+    public CollisionSystem(ECS ecs, int cap, World world, Random rnd){
         super(ecs,cap, ecs.getGroup(Body.class, Collider.class, Velocity.class));
+        this.world = world;
+        this.rnd = rnd;
+        this.grid = new SpatialGrid(world.width(),world.height(),CELL_SIZE,cap);
         velocityComponents = ecs.getter(Velocity.class);
         bodyComponents = ecs.getter(Body.class);
-        queried = new Array<>(cap);
+        writes(Body.class, Velocity.class);
+        structuralChanges();
     }
 
     @Override
     protected void processEntity(Entity e) {
 
         Body b1 = bodyComponents.getUnsafe(e);
-        if (!offScreen(e,b1)) {
-            collisionRange.set(
-                    b1.position.x,
-                    b1.position.y,
-                    b1.radius
-            );
-            quadTree.query(
-                    queried,
-                    collisionRange
-            );
-            for (Entity o: queried){
-
-                if (!e.equals(o)) {
-
-                    Body b2 = bodyComponents.getUnsafe(o);
-                    final float eX = b1.position.x;
-                    final float oX = b2.position.x;
-                    final float eY = b1.position.y;
-                    final float oY = b2.position.y;
-                    final float dx = eX - oX;
-                    final float dy = eY - oY;
-                    final float dist = dx * dx + dy * dy;
-                    final float rSum = b1.radius + b2.radius;
-
-                    if (dist < rSum * rSum) { // if we have an actual collision;
-                        Velocity v = velocityComponents.getUnsafe(e);
-                        tmp.set(eX - oX, eY - oY);
-                        tmp.nor().scl(v.speed);
-                        v.velocity.set(tmp);
-
-                        if (!b1.infected) {
-                            if (b1.vulnerable && b2.infected) {
-                                b1.infected = true;
-                                b1.color = Body.RED;
-                                getEcs().entityManager().addComponent(e,new Dying());
-                            }
-                        }
-                    }
+        if (!offScreen(e,b1) && !collided) {
+            // any body overlapping b1 has its position within this range
+            final float range = b1.radius + maxRadius;
+            if (broadPhase == BroadPhase.GRID) {
+                int found = grid.query(b1.position.x, b1.position.y, range, queried);
+                if (found > queried.length) {
+                    queried = new int[found * 2];
+                    found = grid.query(b1.position.x, b1.position.y, range, queried);
                 }
+                final EntityArray entities = getEntities();
+                for (int i = 0; i < found; i++)
+                    collide(e,b1,entities.get(queried[i]));
+            } else {
+                collisionRange.set(b1.position.x, b1.position.y, range);
+                quadTree.query(treeQueried,collisionRange);
+                for (int i = 0; i < treeQueried.size; i++)
+                    collide(e,b1,treeQueried.get(i));
+                treeQueried.clear();
             }
-            queried.clear();
         }
     }
 
+    private void collide(Entity e, Body b1, Entity o) {
+
+        if (o != e) {
+            Body b2 = bodyComponents.getUnsafe(o);
+            final float dx = b1.position.x - b2.position.x;
+            final float dy = b1.position.y - b2.position.y;
+            final float dist = dx * dx + dy * dy;
+            final float rSum = b1.radius + b2.radius;
+
+            if (dist < rSum * rSum) // if we have an actual collision;
+                respond(e,b1,b2);
+        }
+    }
+
+    // e bounces off of b2 and may get infected by it
+    private void respond(Entity e, Body b1, Body b2) {
+        Velocity v = velocityComponents.getUnsafe(e);
+        tmp.set(b1.position.x - b2.position.x, b1.position.y - b2.position.y);
+        tmp.nor().scl(v.speed);
+        v.velocity.set(tmp);
+
+        if (!b1.infected) {
+            if (b1.vulnerable && b2.infected && infected()) {
+                b1.infected = true;
+                b1.color = Body.RED;
+                commands().addComponent(e,new Dying());
+            }
+        }
+    }
+
+    /**
+     * Splits the collision of the GRID broad phase in two. In begin(), the entities are split into fixed ranges
+     * queried in parallel. The query phase only reads: each worker writes its contacts (pairs of entity indices)
+     * into its own int buffer. The contacts are then applied on the calling thread in range order.
+     * That is the order of a serial run, so the velocities, infections (and the use of the random)
+     * do not depend on the number of workers or thread scheduling. Dying components are added
+     * through commands(), played back with the other structural changes of the system.
+     * Bodies outside the world are skipped by the query phase and wrapped in processEntity() as before.
+     *
+     * The calling thread queries the first range. Do not use an executor that is busy running the system.
+     * (i.e. the executor of the Scheduler) Ranges the executor rejects are queried on the calling thread.
+     *
+     * @param executor the executor
+     * @param workers the number of ranges
+     */
+    public void setParallelCollision(Executor executor, int workers) {
+        if (isProcessing()) throw new IllegalStateException("System is processing");
+        if (executor == null) throw new IllegalArgumentException("null executor");
+        if (workers < 1) throw new IllegalArgumentException("workers < 1");
+        releaseExecutor();
+        this.executor = executor;
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++)
+            this.workers[i] = new Worker();
+    }
+
+    /**
+     * Parallel collision on threads of the system's own. (workers - 1 daemon threads, the calling thread
+     * takes the first range) Shut down on setSerialCollision(), a new setParallelCollision() or terminate.
+     * (See setParallelCollision(Executor,int))
+     *
+     * @param workers the number of ranges
+     */
+    public void setParallelCollision(int workers) {
+        if (workers < 1) throw new IllegalArgumentException("workers < 1");
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,workers - 1), r -> {
+            Thread thread = new Thread(r,"collision-worker");
+            thread.setDaemon(true);
+            return thread;
+        }); // threads are started on demand
+        setParallelCollision(executor,workers);
+        ownExecutor = executor;
+    }
+
+    /**
+     * Parallel collision with one range per available processor. (See setParallelCollision(int))
+     */
+    public void setParallelCollision() {
+        setParallelCollision(Runtime.getRuntime().availableProcessors());
+    }
+
+    public void setSerialCollision() {
+        if (isProcessing()) throw new IllegalStateException("System is processing");
+        releaseExecutor();
+        executor = null;
+        workers = null;
+    }
+
+    private void releaseExecutor() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+            ownExecutor = null;
+        }
+    }
+
+    public boolean isParallelCollision() {
+        return workers != null;
+    }
+
+    /**
+     * GRID: A uniform grid refilled every frame. (The default)
+     * QUADTREE: A quadtree kept across frames, updated as the bodies move.
+     * Better for bodies of very different sizes, or mostly still bodies.
+     * SWEEP_AND_PRUNE: Bounds kept sorted along x across frames. Each overlapping pair is found once,
+     * and collided in begin(). processEntity() then only wraps the bodies around the world.
+     * Parallel collision (setParallelCollision()) applies to the GRID only.
+     *
+     * @param broadPhase the broad phase. Do not switch while processing
+     */
+    public void setBroadPhase(BroadPhase broadPhase) {
+        if (isProcessing()) throw new IllegalStateException("Switching broad phase while processing");
+        if (broadPhase == this.broadPhase) return;
+        this.broadPhase = broadPhase;
+        quadTree = null;
+        treeQueried = null;
+        points = null;
+        sweepAndPrune = null;
+        byId = null;
+        final EntityArray entities = getEntities();
+        if (broadPhase == BroadPhase.QUADTREE) {
+            treeWidth = world.width();
+            treeHeight = world.height();
+            quadTree = new QuadTree<>(0,0,treeWidth,treeHeight);
+            treeQueried = new Array<>(false,64);
+            points = Point.array(Math.max(64,entities.count()));
+            for (int i = 0; i < entities.count(); i++)
+                treeInsert(entities.get(i));
+            quadTree.rebuild();
+        } else if (broadPhase == BroadPhase.SWEEP_AND_PRUNE) {
+            sweepAndPrune = new SweepAndPrune(entities.count());
+            byId = new Entity[Math.max(64,entities.count())];
+            for (int i = 0; i < entities.count(); i++)
+                sweepInsert(entities.get(i));
+        }
+    }
+
+    public BroadPhase broadPhase() {
+        return broadPhase;
+    }
+
+    @Override
+    protected void entityAdded(Entity e) {
+        if (quadTree != null) treeInsert(e);
+        else if (sweepAndPrune != null) sweepInsert(e);
+    }
+
+    @Override
+    protected void entityRemoved(Entity e) {
+        if (quadTree != null) {
+            quadTree.remove(points[e.id()]);
+            points[e.id()] = null;
+        } else if (sweepAndPrune != null) {
+            sweepAndPrune.remove(e.id());
+            byId[e.id()] = null;
+        }
+    }
+
+    private void sweepInsert(Entity e) {
+        final int id = e.id();
+        if (id >= byId.length)
+            byId = Arrays.copyOf(byId,Math.max(id + 1,byId.length * 2));
+        Body b = bodyComponents.getUnsafe(e);
+        sweepAndPrune.add(id, b.position.x, b.position.y, b.radius);
+        byId[id] = e;
+    }
+
+    // Each pair once. Both bodies respond
+    private void collidePairs() {
+        final int[] pairs = sweepAndPrune.pairs();
+        final int pairCount = sweepAndPrune.pairCount();
+        for (int i = 0; i < pairCount; i++) {
+            final Entity a = byId[pairs[2 * i]];
+            final Entity b = byId[pairs[2 * i + 1]];
+            collide(a,bodyComponents.getUnsafe(a),b);
+            collide(b,bodyComponents.getUnsafe(b),a);
+        }
+    }
+
+    private void treeInsert(Entity e) {
+        final int id = e.id();
+        if (id >= points.length)
+            points = Arrays.copyOf(points,Math.max(id + 1,points.length * 2));
+        Body b = bodyComponents.getUnsafe(e);
+        points[id] = quadTree.insert(b.position.x, b.position.y, b.radius, e);
+    }
+
+    /**
+     * @param rate the chance of a vulnerable body getting infected on contact with an infected. [0,1]
+     */
+    public void setInfectionRate(float rate) {
+        if (rate < 0 || rate > 1) throw new IllegalArgumentException("Infection rate: " + rate);
+        this.infectionRate = rate;
+    }
+
+    public float infectionRate() {
+        return infectionRate;
+    }
+
+    private boolean infected() {
+        return infectionRate >= 1 || rnd.nextFloat() < infectionRate;
+    }
+
+    private boolean outside(Body b) {
+        final float x = b.position.x;
+        final float y = b.position.y;
+        return x < 0 || x > world.width() || y < 0 || y > world.height();
+    }
+
     private boolean offScreen(Entity e, Body b) {
 
         final float x = b.position.x;
         final float y = b.position.y;
         final float r = b.radius;
+        final float w = world.width();
+        final float h = world.height();
 
         boolean offScreen = false;
 
         if (x < 0) {
-            b.position.x = x + Gdx.graphics.getWidth();
+            b.position.x = x + w;
             offScreen = true;
         }
-        else if (x > Gdx.graphics.getWidth()) {
-            b.position.x = x - Gdx.graphics.getWidth();
+        else if (x > w) {
+            b.position.x = x - w;
             offScreen = true;
         }
         else if (y < 0) {
-            b.position.y = y + Gdx.graphics.getHeight();
+            b.position.y = y + h;
             offScreen = true;
         }
-        else if (y > Gdx.graphics.getHeight()) {
-            b.position.y = y - Gdx.graphics.getHeight();
+        else if (y > h) {
+            b.position.y = y - h;
             offScreen = true;
         }
 
@@ -141,18 +355,168 @@ public class CollisionSystem extends ECSystem {
         return offScreen;
     }
 
+    // Refills the grid with the index of each entity in the system. Or updates the quadtree / sweep and prune
     @Override
     protected void begin() {
-        quadTree = new QuadTree<>(
-                0,
-                0,
-                Gdx.graphics.getWidth(),
-                Gdx.graphics.getHeight());
-        getEntities().iterate(quadTreeInsert);
+        final EntityArray entities = getEntities();
+        float maxRadius = 0;
+        if (broadPhase == BroadPhase.GRID) {
+            if (grid.width() != world.width() || grid.height() != world.height())
+                grid.resize(world.width(),world.height());
+            else grid.clear();
+            for (int i = 0; i < entities.count(); i++) {
+                Body b = bodyComponents.getUnsafe(entities.get(i));
+                grid.insert(i, b.position.x, b.position.y);
+                maxRadius = Math.max(maxRadius,b.radius);
+            } grid.build();
+        } else if (broadPhase == BroadPhase.SWEEP_AND_PRUNE) {
+            for (int i = 0; i < entities.count(); i++) {
+                final Entity e = entities.get(i);
+                Body b = bodyComponents.getUnsafe(e);
+                sweepAndPrune.update(e.id(), b.position.x, b.position.y, b.radius);
+            } sweepAndPrune.sweep();
+            collidePairs();
+        } else {
+            for (int i = 0; i < entities.count(); i++) {
+                final Entity e = entities.get(i);
+                Body b = bodyComponents.getUnsafe(e);
+                quadTree.update(points[e.id()], b.position.x, b.position.y);
+                maxRadius = Math.max(maxRadius,b.radius);
+            } if (treeWidth != world.width() || treeHeight != world.height()) {
+                treeWidth = world.width();
+                treeHeight = world.height();
+                quadTree.rebuild(0,0,treeWidth,treeHeight);
+            }
+        } this.maxRadius = maxRadius;
+        collided = broadPhase == BroadPhase.SWEEP_AND_PRUNE;
+        if (broadPhase == BroadPhase.GRID && workers != null) {
+            queryParallel(entities.count());
+            applyContacts();
+            collided = true;
+        }
+    }
+
+    // Fixed ranges by the entity count, like the ParallelProcessor. The calling thread takes the first
+    private void queryParallel(int count) {
+        used = 0;
+        if (count == 0) return;
+        final int size = (count + workers.length - 1) / workers.length;
+        used = (count + size - 1) / size;
+        failure = null;
+        latch.reset(used - 1);
+        RuntimeException rejected = null;
+        for (int w = 1; w < used; w++) {
+            workers[w].set(w * size, Math.min(count, (w + 1) * size));
+            if (rejected == null) {
+                try {
+                    executor.execute(workers[w]);
+                    continue;
+                } catch (RuntimeException e) {
+                    rejected = e;
+                }
+            } workers[w].run(); // not accepted by the executor. Run inline
+        }
+        workers[0].set(0, Math.min(count,size));
+        workers[0].process();
+        latch.await();
+        Throwable t = failure;
+        if (rejected != null) {
+            if (t != null) rejected.addSuppressed(t);
+            t = rejected;
+        }
+        if (t != null) {
+            used = 0;
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            if (t instanceof Error) throw (Error) t;
+            throw new IllegalStateException(t);
+        }
+    }
+
+    // In range order. Each range in entity order
+    private void applyContacts() {
+        final EntityArray entities = getEntities();
+        for (int w = 0; w < used; w++) {
+            final Worker worker = workers[w];
+            final int[] contacts = worker.contacts;
+            final int n = worker.count * 2;
+            for (int i = 0; i < n; i += 2) {
+                final Entity e = entities.get(contacts[i]);
+                respond(e,bodyComponents.getUnsafe(e),bodyComponents.getUnsafe(entities.get(contacts[i + 1])));
+            } worker.count = 0;
+        } used = 0;
+    }
+
+    // Queries a range of entities. Reads the grid and bodies only
+    private final class Worker implements Runnable {
+
+        private int[] contacts = new int[256]; // pairs of entity indices. (index, other index)
+        private int[] queried = new int[64];
+        private int count;
+        private int from, to;
+
+        void set(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void process() {
+            try {
+                query();
+            } catch (Throwable t) {
+                if (failure == null) failure = t;
+            }
+        }
+
+        private void query() {
+            final EntityArray entities = getEntities();
+            final float maxRadius = CollisionSystem.this.maxRadius;
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                final Body b1 = bodyComponents.getUnsafe(entities.get(i));
+                if (outside(b1)) continue;
+                final float x = b1.position.x;
+                final float y = b1.position.y;
+                int found = grid.query(x, y, b1.radius + maxRadius, queried);
+                if (found > queried.length) {
+                    queried = new int[found * 2];
+                    found = grid.query(x, y, b1.radius + maxRadius, queried);
+                }
+                for (int k = 0; k < found; k++) {
+                    final int j = queried[k];
+                    if (j == i) continue;
+                    final Body b2 = bodyComponents.getUnsafe(entities.get(j));
+                    final float dx = x - b2.position.x;
+                    final float dy = y - b2.position.y;
+                    final float rSum = b1.radius + b2.radius;
+                    if (dx * dx + dy * dy < rSum * rSum) {
+                        if (count * 2 == contacts.length)
+                            contacts = Arrays.copyOf(contacts,contacts.length * 2);
+                        contacts[count * 2] = i;
+                        contacts[count * 2 + 1] = j;
+                        count++;
+                    }
+                }
+            } this.count = count;
+        }
+
+        @Override
+        public void run() {
+            try {
+                process();
+            } finally {
+                latch.countDown();
+            }
+        }
     }
 
     @Override
     protected void terminate() {
         quadTree = null;
+        points = null;
+        sweepAndPrune = null;
+        byId = null;
+        releaseExecutor();
+        executor = null;
+        workers = null;
     }
 }
@@ -19,13 +19,15 @@ public class DyingSystem extends ECSystem {
     public DyingSystem(ECS ecs, int cap) {
         super(ecs,cap, ecs.getGroup(Dying.class));
         dyingComponents = ecs.getter(Dying.class);
+        writes(Dying.class);
+        structuralChanges();
     }
 
     @Override
     protected void processEntity(Entity e, float dt) {
         Dying d = dyingComponents.get(e);
         if ((d.timeLeft -= dt) < 0)
-            getEcs().entityManager().remove(e);
+            commands().destroy(e);
     }
 
 }
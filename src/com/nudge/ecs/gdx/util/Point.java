@@ -5,6 +5,9 @@ public class Point<E> {
     public float x, y, r;
     public E e;
 
+    int code; // morton code. (QuadTree)
+    QuadTree.Node<E> leaf;
+
     public Point(float x, float y, float r, E element) {
         this.e = element;
         this.x = x;
@@ -12,6 +15,13 @@ public class Point<E> {
         this.r = r;
     }
 
+    Point() { }
+
+    @SuppressWarnings({"unchecked","rawtypes"})
+    public static <E> Point<E>[] array(int size) {
+        return new Point[size];
+    }
+
     public boolean intersect(Point<E> p) {
         float dx = x - p.x;
         float dy = y - p.y;
@@ -3,122 +3,410 @@ package com.nudge.ecs.gdx.util;
 import com.badlogic.gdx.math.Circle;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.Array;
+import com.nudge.ecs.util.containers.Pool;
+
+import java.util.Arrays;
 
 /**
  * A quadtree used for collision checks.
  * With this, "particles" only need to check their immediate surroundings for collision.
  * Making checks a lot faster.
  *
+ * Kept across frames. Points are updated in place: A point only changes leaf when it moves out of it.
+ * Leaves split when they hold more than CAP points, and regions merge back into one leaf when they
+ * drop to CAP or below. Nodes and points are pooled, so there is no allocation in the steady state.
+ *
+ * Leaves are found by the morton code of the point, quantized to 15 bits per axis over the bounds.
+ * (Two bits per level. The child order SW, SE, NW, NE follows the code)
+ * Points outside the bounds are placed in the closest leaf. Nodes on the bounds of the tree extend to infinity
+ * on those sides when culling queries, so such points are still found. rebuild() sorts all points by their code
+ * and builds the tree top-down, for when most points have moved or the bounds change.
+ *
  * @author Frederik Dahl
  * 2019
  */
 
 public class QuadTree<E> {
 
-    private final float x,y,w,h;
-    private boolean divided;
-    private final Array<Point<E>> points;
-    private QuadTree<E>[] regions;
-
-    public static final int NW = 0;
-    public static final int NE = 1;
-    public static final int SW = 2;
-    public static final int SE = 3;
+    public static final int SW = 0;
+    public static final int SE = 1;
+    public static final int NW = 2;
+    public static final int NE = 3;
     public static final int CAP = 5;
+    public static final int MAX_DEPTH = 15;
 
-    public QuadTree(float x, float y, float w, float h) {
+    private static final int LEFT = 1, RIGHT = 2, BOTTOM = 4, TOP = 8;
 
-        points = new Array<>();
-        this.x = x;
-        this.y = y;
-        this.w = w;
-        this.h = h;
+    static final class Node<E> {
+
+        float x, y, w, h;
+        int edges; // sides on the bounds of the tree
+        int depth;
+        int count; // points in this region
+        Node<E> parent;
+        Node<E>[] children; // kept when pooled
+        boolean divided;
+        final Array<Point<E>> points = new Array<>(false,CAP + 1);
+
+        boolean isLeaf() {
+            return !divided;
+        }
+
+        float minX() { return (edges & LEFT) != 0 ? Float.NEGATIVE_INFINITY : x; }
+        float maxX() { return (edges & RIGHT) != 0 ? Float.POSITIVE_INFINITY : x + w; }
+        float minY() { return (edges & BOTTOM) != 0 ? Float.NEGATIVE_INFINITY : y; }
+        float maxY() { return (edges & TOP) != 0 ? Float.POSITIVE_INFINITY : y + h; }
+
+        boolean overlaps(Rectangle r) {
+            return minX() < r.x + r.width && maxX() > r.x && minY() < r.y + r.height && maxY() > r.y;
+        }
+
+        boolean overlaps(Circle c) {
+            float closestX = c.x;
+            float closestY = c.y;
+            final float minX = minX(), maxX = maxX(), minY = minY(), maxY = maxY();
+            if (c.x < minX) closestX = minX;
+            else if (c.x > maxX) closestX = maxX;
+            if (c.y < minY) closestY = minY;
+            else if (c.y > maxY) closestY = maxY;
+            closestX = closestX - c.x;
+            closestX *= closestX;
+            closestY = closestY - c.y;
+            closestY *= closestY;
+            return closestX + closestY < c.radius * c.radius;
+        }
+    }
+
+    private float x, y, w, h;
+    private float qx, qy; // quantization scale
+    private final Node<E> root;
+    private final Pool<Node<E>> nodes;
+    private final Pool<Point<E>> points;
+
+    private Point<E>[] scratch; // rebuild
+    private long[] keys;
+    private int gathered;
+    private int size;
+
+    public QuadTree(float x, float y, float w, float h) {
+        nodes = new Pool<Node<E>>(64) {
+            @Override
+            protected Node<E> newObject() {
+                return new Node<>();
+            }
+            @Override
+            protected void reset(Node<E> node) {
+                node.points.clear();
+                node.divided = false;
+                node.parent = null;
+                node.count = 0;
+            }
+        };
+        points = new Pool<Point<E>>(64) {
+            @Override
+            protected Point<E> newObject() {
+                return new Point<>();
+            }
+            @Override
+            protected void reset(Point<E> p) {
+                p.e = null;
+                p.leaf = null;
+            }
+        };
+        root = new Node<>();
+        scratch = Point.array(64);
+        keys = new long[64];
+        setBounds(x,y,w,h);
     }
 
-    public void insert(Point<E> p) {
+    /**
+     * @return the point. Keep it for update() and remove()
+     */
+    public Point<E> insert(float px, float py, float r, E e) {
+        Point<E> p = points.obtain();
+        p.x = px;
+        p.y = py;
+        p.r = r;
+        p.e = e;
+        p.code = code(px,py);
+        place(p);
+        size++;
+        return p;
+    }
 
-        if(!this.contains(p.x, p.y)) return;
-        if(points.size < CAP) points.add(p);
-        else{
-            if (!divided)split();
-            regions[NW].insert(p);
-            regions[NE].insert(p);
-            regions[SW].insert(p);
-            regions[SE].insert(p);
+    /**
+     * Moves the point. Only changes leaf if it moved out of it.
+     */
+    public void update(Point<E> p, float px, float py) {
+        final int code = code(px,py);
+        p.x = px;
+        p.y = py;
+        final Node<E> leaf = p.leaf;
+        final int shift = 30 - 2 * leaf.depth;
+        if ((code >>> shift) == (p.code >>> shift)) {
+            p.code = code; // same leaf
+        } else {
+            p.code = code;
+            detach(p);
+            place(p);
+            merge(leaf);
         }
     }
-    
-    private void split() {
 
-        divided = true;
-        float childW = w/2;
-        float childH = h/2;
-        regions = new QuadTree[4];
-        regions[SW] = new QuadTree<>(x, y, childW, childH);
-        regions[SE] = new QuadTree<>(x + childW, y, childW, childH);
-        regions[NW] = new QuadTree<>(x, y + childH, childW, childH);
-        regions[NE] = new QuadTree<>(x + childW, y + childH, childW, childH);
+    public void remove(Point<E> p) {
+        final Node<E> leaf = p.leaf;
+        detach(p);
+        merge(leaf);
+        points.free(p);
+        size--;
+    }
+
+    /**
+     * Removes all points. Nodes and points are returned to the pools.
+     */
+    public void clear() {
+        collect(root,null);
+        root.points.clear();
+        root.count = 0;
+        size = 0;
+    }
+
+    /**
+     * Rebuilds the tree from the current positions of all points. (Sorted by morton code, built top-down)
+     */
+    public void rebuild() {
+        final int n = gather();
+        for (int i = 0; i < n; i++)
+            scratch[i].code = code(scratch[i].x,scratch[i].y);
+        build(n);
+    }
+
+    /**
+     * Rebuilds the tree with new bounds.
+     */
+    public void rebuild(float x, float y, float w, float h) {
+        setBounds(x,y,w,h);
+        rebuild();
     }
 
     public void query(Array<E> list, Rectangle box) {
+        query(root,list,box);
+    }
 
-        if(this.overlaps(box)) {
-            for (int i = 0; i < points.size; i++) {
-                if (box.contains(points.get(i).x, points.get(i).y)) {
-                    list.add(points.get(i).e);
+    public void query(Array<E> list, Circle circle) {
+        query(root,list,circle);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int pooledNodes() {
+        return nodes.size();
+    }
+
+    private void query(Node<E> node, Array<E> list, Rectangle box) {
+        if (node.count > 0 && node.overlaps(box)) {
+            if (node.isLeaf()) {
+                final Array<Point<E>> points = node.points;
+                for (int i = 0; i < points.size; i++) {
+                    Point<E> p = points.get(i);
+                    if (box.contains(p.x, p.y)) list.add(p.e);
                 }
-            }
-            if(divided) {
-                regions[NW].query(list, box);
-                regions[NE].query(list, box);
-                regions[SW].query(list, box);
-                regions[SE].query(list, box);
-            }
+            } else for (Node<E> child : node.children)
+                query(child,list,box);
         }
     }
 
-    public void query(Array<E> list, Circle circle) {
+    private void query(Node<E> node, Array<E> list, Circle circle) {
+        if (node.count > 0 && node.overlaps(circle)) {
+            if (node.isLeaf()) {
+                final Array<Point<E>> points = node.points;
+                for (int i = 0; i < points.size; i++) {
+                    Point<E> p = points.get(i);
+                    if (circle.contains(p.x, p.y)) list.add(p.e);
+                }
+            } else for (Node<E> child : node.children)
+                query(child,list,circle);
+        }
+    }
+
+    private void setBounds(float x, float y, float w, float h) {
+        if (w <= 0 || h <= 0) throw new IllegalArgumentException("QuadTree size: " + w + " x " + h);
+        this.x = x;
+        this.y = y;
+        this.w = w;
+        this.h = h;
+        this.qx = 32768 / w;
+        this.qy = 32768 / h;
+        root.x = x;
+        root.y = y;
+        root.w = w;
+        root.h = h;
+        root.edges = LEFT | RIGHT | BOTTOM | TOP;
+        root.depth = 0;
+    }
+
+    // Descends to the leaf of the code, counting the point on the way. Splits the leaf if over capacity
+    private void place(Point<E> p) {
+        Node<E> node = root;
+        node.count++;
+        while (!node.isLeaf()) {
+            node = node.children[quadrant(p.code,node.depth)];
+            node.count++;
+        } node.points.add(p);
+        p.leaf = node;
+        if (node.points.size > CAP && node.depth < MAX_DEPTH)
+            split(node);
+    }
+
+    private void detach(Point<E> p) {
+        Node<E> node = p.leaf;
+        node.points.removeValue(p,true);
+        for (; node != null; node = node.parent)
+            node.count--;
+        p.leaf = null;
+    }
 
-        if(this.overlaps(circle)) {
-            for (int i = 0; i < points.size; i++) {
-                if (circle.contains(points.get(i).x, points.get(i).y)) {
-                    list.add(points.get(i).e);
+    // Collapses the largest region above the leaf that has dropped to CAP or below
+    private void merge(Node<E> leaf) {
+        Node<E> target = null;
+        for (Node<E> node = leaf.parent; node != null && node.count <= CAP; node = node.parent)
+            target = node;
+        if (target != null) {
+            for (Node<E> child : target.children)
+                collect(child,target);
+            target.divided = false;
+        }
+    }
+
+    // Frees the nodes of the region. Moves its points to the target leaf, or frees them if null
+    private void collect(Node<E> node, Node<E> target) {
+        if (node.isLeaf()) {
+            final Array<Point<E>> list = node.points;
+            for (int i = 0; i < list.size; i++) {
+                Point<E> p = list.get(i);
+                if (target == null) points.free(p);
+                else {
+                    target.points.add(p);
+                    p.leaf = target;
                 }
             }
-            if(divided) {
-                regions[NW].query(list, circle);
-                regions[NE].query(list, circle);
-                regions[SW].query(list, circle);
-                regions[SE].query(list, circle);
-            }
-        }
+        } else {
+            for (Node<E> child : node.children)
+                collect(child,target);
+        } if (node != root) nodes.free(node);
+        else node.divided = false;
+    }
+
+    private void split(Node<E> node) {
+        final Node<E>[] children = children(node);
+        final Array<Point<E>> list = node.points;
+        for (int i = 0; i < list.size; i++) {
+            Point<E> p = list.get(i);
+            Node<E> child = children[quadrant(p.code,node.depth)];
+            child.points.add(p);
+            child.count++;
+            p.leaf = child;
+        } list.clear();
+        for (Node<E> child : children) // all in one
+            if (child.points.size > CAP && child.depth < MAX_DEPTH) split(child);
+    }
+
+    private Node<E>[] children(Node<E> node) {
+        final float cw = node.w / 2;
+        final float ch = node.h / 2;
+        if (node.children == null) node.children = newChildren();
+        final Node<E>[] children = node.children;
+        for (int q = 0; q < 4; q++) {
+            Node<E> child = nodes.obtain();
+            child.x = (q & 1) == 0 ? node.x : node.x + cw;
+            child.y = (q & 2) == 0 ? node.y : node.y + ch;
+            child.w = cw;
+            child.h = ch;
+            child.edges = node.edges & ((q & 1) == 0 ? ~RIGHT : ~LEFT) & ((q & 2) == 0 ? ~TOP : ~BOTTOM);
+            child.depth = node.depth + 1;
+            child.parent = node;
+            children[q] = child;
+        } node.divided = true;
+        return children;
     }
 
-    // a "Point" can't inhabit than one region
-    private boolean contains(float px, float py) {
-        return x <= px && x + w > px && y <= py && y + h > py;
+    // Moves all points to scratch and frees all nodes but the root
+    private int gather() {
+        if (scratch.length < size) {
+            scratch = Point.array(size * 2);
+            keys = new long[size * 2];
+        } gathered = 0;
+        gather(root);
+        root.divided = false;
+        root.points.clear();
+        root.count = 0;
+        return gathered;
     }
 
-    private boolean overlaps(Rectangle r) {
-        return x < r.x + r.width && x + w > r.x && y < r.y + r.height && y + h > r.y;
+    private void gather(Node<E> node) {
+        if (node.isLeaf()) {
+            final Array<Point<E>> list = node.points;
+            for (int i = 0; i < list.size; i++)
+                scratch[gathered++] = list.get(i);
+        } else for (Node<E> child : node.children) {
+            gather(child);
+            nodes.free(child);
+        }
     }
 
-    private boolean overlaps(Circle c) {
+    private void build(int n) {
+        for (int i = 0; i < n; i++)
+            keys[i] = ((long) scratch[i].code << 32) | i;
+        Arrays.sort(keys,0,n);
+        build(root,0,n);
+    }
 
-        float closestX = c.x;
-        float closestY = c.y;
+    // Sorted by code, the points of each child are a contiguous range
+    private void build(Node<E> node, int lo, int hi) {
+        node.count = hi - lo;
+        if (hi - lo <= CAP || node.depth == MAX_DEPTH) {
+            for (int i = lo; i < hi; i++) {
+                Point<E> p = scratch[(int) keys[i]];
+                node.points.add(p);
+                p.leaf = node;
+            }
+        } else {
+            final Node<E>[] children = children(node);
+            int start = lo;
+            for (int q = 0; q < 4; q++) {
+                int end = start;
+                while (end < hi && quadrant((int)(keys[end] >>> 32),node.depth) == q) end++;
+                build(children[q],start,end);
+                start = end;
+            }
+        }
+    }
 
-        if (c.x < x) closestX = x;
-        else if (c.x > x + w) closestX = x + w;
+    @SuppressWarnings({"unchecked","rawtypes"})
+    private static <E> Node<E>[] newChildren() {
+        return new Node[4];
+    }
 
-        if (c.y < y) closestY = y;
-        else if (c.y > y + h) closestY = y + h;
+    private static int quadrant(int code, int depth) {
+        return (code >>> (28 - 2 * depth)) & 3;
+    }
 
-        closestX = closestX - c.x;
-        closestX *= closestX;
-        closestY = closestY - c.y;
-        closestY *= closestY;
+    private int code(float px, float py) {
+        int ix = (int)((px - x) * qx);
+        int iy = (int)((py - y) * qy);
+        ix = ix < 0 ? 0 : Math.min(ix,0x7FFF);
+        iy = iy < 0 ? 0 : Math.min(iy,0x7FFF);
+        return spread(ix) | (spread(iy) << 1);
+    }
 
-        return closestX + closestY < c.radius * c.radius;
+    // 15 bits to the even bits of an int. (The code is positive)
+    private static int spread(int v) {
+        v = (v | (v << 8)) & 0x00FF00FF;
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        v = (v | (v << 1)) & 0x55555555;
+        return v;
     }
 }
@@ -0,0 +1,206 @@
+package com.nudge.ecs.gdx.util;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the world, for collision checks. Replaces building a QuadTree every frame.
+ *
+ * Items are int ids (i.e. the index of an entity in a system) with a position. Cleared and refilled each frame.
+ * Everything is kept in primitive arrays. They only grow, so there is no allocation in the steady state.
+ * On the first query after inserting, the items are counting-sorted by cell. Each cell is then a contiguous
+ * range of the sorted arrays.
+ *
+ * Queries only read the grid once sorted. Call build() after inserting to query from multiple threads.
+ *
+ * Queries write the ids into a buffer given by the caller, and return the number of ids found.
+ * If that number is greater than the buffer length, the buffer was too small (only the first ids are written).
+ * Positions outside the world are clamped to the edge cells.
+ *
+ * Choose a cell size close to the query diameter. i.e. 2 * max radius.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class SpatialGrid {
+
+    private float width, height;
+    private final float cellSize;
+    private final float invCellSize;
+    private int cols, rows;
+
+    private int[] cellStart; // cells + 1. After sorting, cell c is [cellStart[c], cellStart[c+1])
+    private int[] cursor;
+
+    private int[] ids;
+    private int[] cells;
+    private float[] xs, ys;
+    private int[] sortedIds;
+    private float[] sortedXs, sortedYs;
+    private int count;
+    private boolean sorted;
+
+    public SpatialGrid(float width, float height, float cellSize, int initialCap) {
+        if (cellSize <= 0) throw new IllegalArgumentException("cellSize: " + cellSize);
+        this.cellSize = cellSize;
+        this.invCellSize = 1 / cellSize;
+        initialCap = Math.max(16,initialCap);
+        ids = new int[initialCap];
+        cells = new int[initialCap];
+        xs = new float[initialCap];
+        ys = new float[initialCap];
+        sortedIds = new int[initialCap];
+        sortedXs = new float[initialCap];
+        sortedYs = new float[initialCap];
+        resize(width,height);
+    }
+
+    /**
+     * Clears the grid. Allocates only if the world has more cells than before.
+     */
+    public void resize(float width, float height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Grid size: " + width + " x " + height);
+        this.width = width;
+        this.height = height;
+        cols = Math.max(1,(int)Math.ceil(width * invCellSize));
+        rows = Math.max(1,(int)Math.ceil(height * invCellSize));
+        final int cellCount = cols * rows;
+        if (cellStart == null || cellStart.length < cellCount + 1) {
+            cellStart = new int[cellCount + 1];
+            cursor = new int[cellCount];
+        } clear();
+    }
+
+    public void clear() {
+        count = 0;
+        sorted = false;
+    }
+
+    public void insert(int id, float x, float y) {
+        if (count == ids.length) grow();
+        ids[count] = id;
+        xs[count] = x;
+        ys[count] = y;
+        cells[count] = col(x) + row(y) * cols;
+        count++;
+        sorted = false;
+    }
+
+    /**
+     * Sorts the items by cell, if not already sorted. Queries after this do not write to the grid.
+     */
+    public void build() {
+        if (!sorted) sort();
+    }
+
+    /**
+     * Ids with a position within the circle. (distance <= radius)
+     *
+     * @param out the buffer
+     * @return the number of ids found. Greater than the buffer length if it was too small
+     */
+    public int query(float x, float y, float radius, int[] out) {
+        if (!sorted) sort();
+        final int c0 = col(x - radius), c1 = col(x + radius);
+        final int r0 = row(y - radius), r1 = row(y + radius);
+        final float r2 = radius * radius;
+        final int capacity = out.length;
+        int found = 0;
+        for (int r = r0; r <= r1; r++) {
+            final int rowOffset = r * cols;
+            final int start = cellStart[rowOffset + c0];
+            final int end = cellStart[rowOffset + c1 + 1];
+            for (int i = start; i < end; i++) {
+                final float dx = sortedXs[i] - x;
+                final float dy = sortedYs[i] - y;
+                if (dx * dx + dy * dy <= r2) {
+                    if (found < capacity) out[found] = sortedIds[i];
+                    found++;
+                }
+            }
+        } return found;
+    }
+
+    /**
+     * Ids with a position within the rectangle. (Inclusive)
+     *
+     * @param out the buffer
+     * @return the number of ids found. Greater than the buffer length if it was too small
+     */
+    public int query(float minX, float minY, float maxX, float maxY, int[] out) {
+        if (!sorted) sort();
+        final int c0 = col(minX), c1 = col(maxX);
+        final int r0 = row(minY), r1 = row(maxY);
+        final int capacity = out.length;
+        int found = 0;
+        for (int r = r0; r <= r1; r++) {
+            final int rowOffset = r * cols;
+            final int start = cellStart[rowOffset + c0];
+            final int end = cellStart[rowOffset + c1 + 1];
+            for (int i = start; i < end; i++) {
+                final float px = sortedXs[i];
+                final float py = sortedYs[i];
+                if (px >= minX && px <= maxX && py >= minY && py <= maxY) {
+                    if (found < capacity) out[found] = sortedIds[i];
+                    found++;
+                }
+            }
+        } return found;
+    }
+
+    // Counting sort by cell. Cells of a row are contiguous, so a row span of cells is a single range
+    private void sort() {
+        final int cellCount = cols * rows;
+        Arrays.fill(cellStart,0,cellCount + 1,0);
+        for (int i = 0; i < count; i++)
+            cellStart[cells[i] + 1]++;
+        for (int c = 0; c < cellCount; c++) {
+            cellStart[c + 1] += cellStart[c];
+            cursor[c] = cellStart[c];
+        } for (int i = 0; i < count; i++) {
+            final int dst = cursor[cells[i]]++;
+            sortedIds[dst] = ids[i];
+            sortedXs[dst] = xs[i];
+            sortedYs[dst] = ys[i];
+        } sorted = true;
+    }
+
+    private int col(float x) {
+        final int c = (int)(x * invCellSize);
+        return x < 0 ? 0 : Math.min(c,cols - 1);
+    }
+
+    private int row(float y) {
+        final int r = (int)(y * invCellSize);
+        return y < 0 ? 0 : Math.min(r,rows - 1);
+    }
+
+    private void grow() {
+        final int size = ids.length * 2;
+        ids = Arrays.copyOf(ids,size);
+        cells = Arrays.copyOf(cells,size);
+        xs = Arrays.copyOf(xs,size);
+        ys = Arrays.copyOf(ys,size);
+        sortedIds = new int[size];
+        sortedXs = new float[size];
+        sortedYs = new float[size];
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public float cellSize() {
+        return cellSize;
+    }
+
+    public float width() {
+        return width;
+    }
+
+    public float height() {
+        return height;
+    }
+}
@@ -0,0 +1,173 @@
+package com.nudge.ecs.gdx.util;
+
+import java.util.Arrays;
+
+/**
+ * Sweep and prune broad phase for circles. Items (by int id, i.e. entity id) are kept across frames,
+ * sorted by the left edge of their bounds. Bodies move little between frames, so the order is nearly sorted
+ * and an insertion sort is close to linear. (A full sort is used when many items were added since the last sweep)
+ *
+ * sweep() writes every overlapping pair of bounds once, as two ids, into a reusable int buffer.
+ * Removing is lazy: removed items are dropped from the order on the next sweep.
+ * Arrays grow with the highest id. No allocation in the steady state.
+ *
+ * @author Frederik Dahl
+ * 17/10/2021
+ */
+
+
+public class SweepAndPrune {
+
+    private static final byte NONE = 0;
+    private static final byte PRESENT = 1;
+    private static final byte REMOVED = 2; // still in the order
+
+    private float[] minX, maxX, minY, maxY; // by id
+    private byte[] state;
+    private int[] order;
+    private int count;
+    private int added;
+    private int removed;
+
+    private int[] pairs;
+    private int pairCount;
+    private long[] keys; // full sort
+
+    public SweepAndPrune(int initialCap) {
+        initialCap = Math.max(16,initialCap);
+        minX = new float[initialCap];
+        maxX = new float[initialCap];
+        minY = new float[initialCap];
+        maxY = new float[initialCap];
+        state = new byte[initialCap];
+        order = new int[initialCap];
+        pairs = new int[initialCap * 2];
+    }
+
+    public void add(int id, float x, float y, float r) {
+        if (id >= state.length) grow(id + 1);
+        if (state[id] == PRESENT) throw new IllegalStateException("Item already added: " + id);
+        if (state[id] == REMOVED) removed--;
+        else {
+            if (count == order.length) order = Arrays.copyOf(order,count * 2);
+            order[count++] = id;
+            added++;
+        } state[id] = PRESENT;
+        update(id,x,y,r);
+    }
+
+    public void update(int id, float x, float y, float r) {
+        minX[id] = x - r;
+        maxX[id] = x + r;
+        minY[id] = y - r;
+        maxY[id] = y + r;
+    }
+
+    public void remove(int id) {
+        if (id < state.length && state[id] == PRESENT) {
+            state[id] = REMOVED;
+            removed++;
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < count; i++)
+            state[order[i]] = NONE;
+        count = added = removed = pairCount = 0;
+    }
+
+    /**
+     * Sorts the items and collects the overlapping pairs. (See pairs())
+     */
+    public void sweep() {
+        if (removed > 0) compact();
+        if (added > count >> 2) fullSort();
+        else insertionSort();
+        added = 0;
+        pairCount = 0;
+        final int[] order = this.order;
+        final float[] minX = this.minX;
+        final float[] minY = this.minY;
+        final float[] maxY = this.maxY;
+        for (int i = 0; i < count; i++) {
+            final int a = order[i];
+            final float right = maxX[a];
+            final float bottom = minY[a];
+            final float top = maxY[a];
+            for (int j = i + 1; j < count; j++) {
+                final int b = order[j];
+                if (minX[b] > right) break;
+                if (minY[b] <= top && maxY[b] >= bottom) {
+                    if (pairCount * 2 == pairs.length) pairs = Arrays.copyOf(pairs,pairs.length * 2);
+                    pairs[pairCount * 2] = a;
+                    pairs[pairCount * 2 + 1] = b;
+                    pairCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the pairs of the last sweep. Pair i is (pairs[2i], pairs[2i+1])
+     */
+    public int[] pairs() {
+        return pairs;
+    }
+
+    public int pairCount() {
+        return pairCount;
+    }
+
+    public int size() {
+        return count - removed;
+    }
+
+    public boolean contains(int id) {
+        return id < state.length && state[id] == PRESENT;
+    }
+
+    private void compact() {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            final int id = order[i];
+            if (state[id] == PRESENT) order[n++] = id;
+            else state[id] = NONE;
+        } count = n;
+        removed = 0;
+    }
+
+    private void insertionSort() {
+        final int[] order = this.order;
+        final float[] minX = this.minX;
+        for (int i = 1; i < count; i++) {
+            final int id = order[i];
+            final float key = minX[id];
+            int j = i - 1;
+            while (j >= 0 && minX[order[j]] > key) {
+                order[j + 1] = order[j];
+                j--;
+            } order[j + 1] = id;
+        }
+    }
+
+    // By the float bits of the left edge (made to sort as signed ints), then by id
+    private void fullSort() {
+        if (keys == null || keys.length < count) keys = new long[order.length];
+        for (int i = 0; i < count; i++) {
+            final int id = order[i];
+            final int bits = Float.floatToIntBits(minX[id]);
+            keys[i] = ((long)(bits ^ ((bits >> 31) & 0x7FFFFFFF)) << 32) | id;
+        } Arrays.sort(keys,0,count);
+        for (int i = 0; i < count; i++)
+            order[i] = (int) keys[i];
+    }
+
+    private void grow(int min) {
+        final int size = Math.max(min,state.length * 2);
+        minX = Arrays.copyOf(minX,size);
+        maxX = Arrays.copyOf(maxX,size);
+        minY = Arrays.copyOf(minY,size);
+        maxY = Arrays.copyOf(maxY,size);
+        state = Arrays.copyOf(state,size);
+    }
+}